@@ -0,0 +1,63 @@
+package com.example.myfirstapp;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+public class Beam {
+
+    final static int L_TOP = 6;
+
+    private static int mNum;
+
+
+    /** Beam topology list */
+    private static IntBuffer top = null;
+
+    public static int getNum() {
+        return mNum;
+    }
+
+
+    /**
+     * Beam constructor
+     * @param fam Family
+     */
+    public Beam(Family fam) {
+        super();
+
+        mNum = fam.getNumBeams();
+
+        // Read the topology
+        readTopology(fam);
+    }
+
+
+    /** Read the beam topology
+     *
+     * @param fam Family
+     */
+    private void readTopology(Family fam) {
+
+        long addr = fam.getBeamTopAddr();
+
+// Slice of the geometry block, already in native byte order
+
+        ByteBuffer bb = fam.getGeometryData(addr, mNum * L_TOP);
+
+// View as IntBuffer
+
+        top = bb.asIntBuffer();
+    }
+
+
+    /**
+     * @return the beam topology list
+     */
+    public static IntBuffer getTop() {
+
+        top.position(0);
+
+        return top;
+    }
+
+}
@@ -0,0 +1,375 @@
+package com.example.myfirstapp;
+
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Minimum and maximum of each contourable quantity, for every state and over
+ * the whole analysis, so contour limits are right wherever the peak is and
+ * don't have to be worked out when contouring is turned on.
+ *
+ * The states are streamed through once on a background thread, reading
+ * straight from the member mappings so the state cache is left alone. Only
+ * the nodal blocks the quantities come from are read, never the element
+ * data. Quantities the states don't have are NaN. The
+ * limits so far can be used while it runs. When it finishes the listener is
+ * told, and the limits are saved as a SideFile so the pass isn't needed
+ * again until the family changes.
+ */
+public class ContourLimits implements Runnable {
+
+    private final static String TAG = "CONTOUR_LIMITS";
+
+    /** Quantities */
+    final static int DISP_X = 0;
+    final static int DISP_Y = 1;
+    final static int DISP_Z = 2;
+    final static int DISP_R = 3;
+    final static int VEL_R  = 4;    // Velocity magnitude
+    final static int ACC_R  = 5;    // Acceleration magnitude
+    final static int TEMP   = 6;    // Temperature
+
+    final static int NUM_QUANTITIES = 7;
+
+    /** Limits file extension */
+    private final static String EXTENSION = ".lim";
+
+    /** Identifies a limits file ("D3CL") */
+    private final static int MAGIC = 0x4433434c;
+
+    /** Limits file version - change if the layout or quantities change */
+    private final static int VERSION = 2;
+
+    /** Told when the limits of every state are known */
+    public interface Listener {
+        void onLimitsReady(ContourLimits limits);
+    }
+
+    /** Family */
+    private Family mFam;
+
+    /** Listener */
+    private Listener mListener;
+
+    /** Minimum and maximum of each quantity in each state */
+    private float[][] mStateMin;
+    private float[][] mStateMax;
+
+    /** Number of states done, in order. Published after each state's limits are stored */
+    private volatile int mNumDone = 0;
+
+    /** Set to stop the pass */
+    private volatile boolean mStopped = false;
+
+    /** Background thread */
+    private Thread mThread;
+
+
+
+    /**
+     * ContourLimits constructor. Uses the saved limits if they are up to date,
+     * otherwise starts the pass over the states in the background
+     * @param fam Family
+     * @param listener Told when the pass finishes. Called on the background thread
+     */
+    public ContourLimits(Family fam, Listener listener) {
+        super();
+
+        mFam      = fam;
+        mListener = listener;
+
+        int nstates = fam.getNumOfStates();
+
+        mStateMin = new float[NUM_QUANTITIES][nstates];
+        mStateMax = new float[NUM_QUANTITIES][nstates];
+
+        if(load()) {
+
+            Log.d(TAG, "Limits of " + Integer.toString(nstates) + " states loaded");
+
+            mNumDone = nstates;
+
+            return;
+        }
+
+        mThread = new Thread(this, TAG);
+        mThread.setDaemon(true);
+        mThread.setPriority(Thread.MIN_PRIORITY);
+        mThread.start();
+    }
+
+
+    @Override
+    public void run() {
+
+        long t0 = System.currentTimeMillis();
+
+        int nstates = mStateMin[0].length;
+
+        FloatBuffer undef = Node.getUndefCoords().duplicate();
+
+        float[] min = new float[NUM_QUANTITIES];
+        float[] max = new float[NUM_QUANTITIES];
+
+        for(int i=0; i<nstates && !mStopped; i++) {
+
+            State state = mFam.getStateFromID(i + 1);
+
+            Arrays.fill(min, Float.NaN);
+            Arrays.fill(max, Float.NaN);
+
+            ByteBuffer data = state.getStateCoordData();
+
+            if(data != null) getDisplacementLimits(undef, data.asFloatBuffer(), min, max);
+
+            getMagnitudeLimits(state, State.VELOCITIES,    VEL_R, min, max);
+            getMagnitudeLimits(state, State.ACCELERATIONS, ACC_R, min, max);
+            getMagnitudeLimits(state, State.TEMPERATURES,  TEMP,  min, max);
+
+            for(int q=0; q<NUM_QUANTITIES; q++) {
+                mStateMin[q][i] = min[q];
+                mStateMax[q][i] = max[q];
+            }
+
+            mNumDone = i + 1;
+        }
+
+        if(mStopped) return;
+
+        Log.d(TAG, "Limits of " + Integer.toString(nstates) + " states in " +
+                   Long.toString(System.currentTimeMillis() - t0) + "ms");
+
+        save();
+
+        if(mListener != null) mListener.onLimitsReady(this);
+    }
+
+
+    /**
+     * Gets the limits of the displacements in a state
+     * @param undef Undeformed coordinates
+     * @param coords Coordinates of the state
+     * @param min Minimum of each quantity - filled in
+     * @param max Maximum of each quantity - filled in
+     */
+    private static void getDisplacementLimits(FloatBuffer undef, FloatBuffer coords, float[] min, float[] max) {
+
+        for(int q=DISP_X; q<=DISP_R; q++) {
+            min[q] = Float.POSITIVE_INFINITY;
+            max[q] = Float.NEGATIVE_INFINITY;
+        }
+
+        int n = Math.min(undef.limit(), coords.limit()) / Node.L_COR;
+
+        float[] d = new float[DISP_R + 1];
+
+        for(int i=0, j=0; i<n; i++, j+=Node.L_COR) {
+
+            d[DISP_X] = coords.get(j)     - undef.get(j);
+            d[DISP_Y] = coords.get(j + 1) - undef.get(j + 1);
+            d[DISP_Z] = coords.get(j + 2) - undef.get(j + 2);
+            d[DISP_R] = (float)Math.sqrt(d[DISP_X] * d[DISP_X] + d[DISP_Y] * d[DISP_Y] + d[DISP_Z] * d[DISP_Z]);
+
+            for(int q=DISP_X; q<=DISP_R; q++) {
+                if(d[q] < min[q]) min[q] = d[q];
+                if(d[q] > max[q]) max[q] = d[q];
+            }
+        }
+    }
+
+
+    /**
+     * Gets the limits of the magnitude of a nodal block's values in a state -
+     * the length of the velocity and acceleration vectors, or each of the
+     * temperatures. Nothing is read if the states don't have the block
+     * @param state State
+     * @param block Nodal data block
+     * @param quantity Quantity to fill in
+     * @param min Minimum of each quantity
+     * @param max Maximum of each quantity
+     */
+    private void getMagnitudeLimits(State state, int block, int quantity, float[] min, float[] max) {
+
+        int width = mFam.getNodalWidth(block);
+
+        if(width == 0) return;
+
+        ByteBuffer data = state.getNodalBlockData(block);
+
+        if(data == null) return;
+
+        FloatBuffer values = data.asFloatBuffer();
+
+        float lo = Float.POSITIVE_INFINITY;
+        float hi = Float.NEGATIVE_INFINITY;
+
+        int n = values.limit();
+
+        boolean vectors = block != State.TEMPERATURES;
+
+        for(int j=0; j<n; j+=(vectors ? width : 1)) {
+
+            float v;
+
+            if(!vectors) {
+                v = values.get(j);
+            }
+            else {
+                float x = values.get(j), y = values.get(j + 1), z = values.get(j + 2);
+
+                v = (float)Math.sqrt(x * x + y * y + z * z);
+            }
+
+            if(v < lo) lo = v;
+            if(v > hi) hi = v;
+        }
+
+        min[quantity] = lo;
+        max[quantity] = hi;
+    }
+
+
+    /**
+     * @return true once the limits of every state are known
+     */
+    public boolean isReady() {
+        return mNumDone == mStateMin[0].length;
+    }
+
+
+    /**
+     * @param quantity Quantity
+     * @return the minimum of <quantity> over all the states done so far, or NaN if none are or the states don't have it
+     */
+    public float getMin(int quantity) {
+
+        int n = mNumDone;
+
+        float min = Float.POSITIVE_INFINITY;
+
+        for(int i=0; i<n; i++) if(mStateMin[quantity][i] < min) min = mStateMin[quantity][i];
+
+        return min != Float.POSITIVE_INFINITY ? min : Float.NaN;
+    }
+
+
+    /**
+     * @param quantity Quantity
+     * @return the maximum of <quantity> over all the states done so far, or NaN if none are or the states don't have it
+     */
+    public float getMax(int quantity) {
+
+        int n = mNumDone;
+
+        float max = Float.NEGATIVE_INFINITY;
+
+        for(int i=0; i<n; i++) if(mStateMax[quantity][i] > max) max = mStateMax[quantity][i];
+
+        return max != Float.NEGATIVE_INFINITY ? max : Float.NaN;
+    }
+
+
+    /**
+     * @param quantity Quantity
+     * @param istate State number, from 1
+     * @return the minimum of <quantity> in the state, or NaN if it isn't known yet
+     */
+    public float getStateMin(int quantity, int istate) {
+        return istate >= 1 && istate <= mNumDone ? mStateMin[quantity][istate - 1] : Float.NaN;
+    }
+
+
+    /**
+     * @param quantity Quantity
+     * @param istate State number, from 1
+     * @return the maximum of <quantity> in the state, or NaN if it isn't known yet
+     */
+    public float getStateMax(int quantity, int istate) {
+        return istate >= 1 && istate <= mNumDone ? mStateMax[quantity][istate - 1] : Float.NaN;
+    }
+
+
+    /**
+     * Stops the pass. The limits so far can still be used
+     */
+    public void shutdown() {
+        mStopped = true;
+    }
+
+
+    /**
+     * Reads the saved limits, if they are for this family as it is now
+     * @return true if they were read
+     */
+    private boolean load() {
+
+        return SideFile.load(mFam, EXTENSION, MAGIC, VERSION, new SideFile.Reader() {
+            public boolean read(DataInputStream in) throws IOException {
+                return ContourLimits.this.read(in);
+            }
+        });
+    }
+
+
+    /**
+     * Reads and validates the limits, after the side file header
+     * @param in Input stream
+     * @return true if they are for these states and quantities
+     * @throws IOException
+     */
+    private boolean read(DataInputStream in) throws IOException {
+
+        int nstates = mStateMin[0].length;
+
+        if(in.readInt() != nstates || in.readInt() != NUM_QUANTITIES) return false;
+
+        for(int q=0; q<NUM_QUANTITIES; q++) {
+            for(int i=0; i<nstates; i++) {
+                mStateMin[q][i] = in.readFloat();
+                mStateMax[q][i] = in.readFloat();
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Writes the limits. Failure is not an error - they are worked out again next time
+     */
+    private void save() {
+
+        SideFile.save(mFam, EXTENSION, MAGIC, VERSION, new SideFile.Writer() {
+            public void write(DataOutputStream out) throws IOException {
+                ContourLimits.this.write(out);
+            }
+        });
+    }
+
+
+    /**
+     * Writes the limits, after the side file header
+     * @param out Output stream
+     * @throws IOException
+     */
+    private void write(DataOutputStream out) throws IOException {
+
+        int nstates = mStateMin[0].length;
+
+        out.writeInt(nstates);
+        out.writeInt(NUM_QUANTITIES);
+
+        for(int q=0; q<NUM_QUANTITIES; q++) {
+            for(int i=0; i<nstates; i++) {
+                out.writeFloat(mStateMin[q][i]);
+                out.writeFloat(mStateMax[q][i]);
+            }
+        }
+    }
+}
@@ -3,19 +3,42 @@ package com.example.myfirstapp;
 import android.util.Log;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class Family {
 
     private final static String TAG = "FAMILY";
 
+    /** Default memory budget for cached state coordinates (in bytes) */
+    private final static long DEFAULT_CACHE_BUDGET = 32L * 1024 * 1024;
+
+    /** Number of words byte swapped per bulk transfer */
+    private final static int SWAP_CHUNK = 4096;
+
+    /** Set if the process has a 64 bit address space */
+    private final static boolean IS_64_BIT = System.getProperty("os.arch", "").contains("64");
+
+    /** Size of a mapped window (in bytes). Members larger than this are mapped in windows.
+     *  Smaller in a 32 bit process, where address space is short */
+    private final static long MAP_WINDOW = IS_64_BIT ? 256L * 1024 * 1024 : 64L * 1024 * 1024;
+
+    /** Step between the start of consecutive windows (in bytes). Windows overlap by half
+     *  so that any read of up to MAP_STEP bytes lies entirely inside one window */
+    private final static long MAP_STEP = MAP_WINDOW / 2;
+
+    /** Most bytes kept mapped in windows. The least recently used windows are dropped beyond this */
+    private final static long MAP_LIMIT = IS_64_BIT ? 2L * 1024 * 1024 * 1024 : 256L * 1024 * 1024;
+
     private String mRootName;
 
     /** Flag to do endian swap when reading data */
@@ -49,6 +72,10 @@ public class Family {
     private int narbs;
     private int ldtab;
     private int maxint;
+    private int mxint;
+    private int neips;
+    private int ioshl1;
+    private int ioshl2;
 
     /** Number of states */
     private int nstates;
@@ -62,21 +89,54 @@ public class Family {
     /** Length of state (in words) */
     private int lstate;
 
+    /** Nodal data blocks in a state - offset from the state time (in words) */
+    private int[] nodalOffset = new int[State.NUM_NODAL_BLOCKS];
+
+    /** Nodal data blocks in a state - values per node */
+    private int[] nodalWidth = new int[State.NUM_NODAL_BLOCKS];
+
+    /** Shell element data in a state - offset from the state time (in words) */
+    private int shellDataOffset;
+
     /** Address of start of undeformed coords (in words) */
     private long undefCoordAddr;
 
+    /** Address of start of solid topology (in words) */
+    private long solidTopAddr;
+
+    /** Address of start of thick shell topology (in words) */
+    private long tshellTopAddr;
+
+    /** Address of start of beam topology (in words) */
+    private long beamTopAddr;
+
     /** Address of start of thin shell topology (in words) */
     private long shellTopAddr;
 
     /** Address of first state */
     private long firstStateAddr;
 
+    /** Geometry block, in native byte order */
+    private ByteBuffer mGeometry;
+
     /** Basic Node class */
     private Node basicNode;
 
     /** Basic Shell class */
     private Shell basicShell;
 
+    /** Basic Solid class */
+    private Solid basicSolid;
+
+    /** Exterior faces of the solid and thick shell parts */
+    private SolidSkin basicSkin;
+
+    /** Basic Thick shell class */
+    private TShell basicTShell;
+
+    /** Basic Beam class */
+    private Beam basicBeam;
+
     /** Basic Part class */
     private Part basicPart;
 
@@ -86,18 +146,39 @@ public class Family {
     /** List of family member names */
     private String[] memberNames;
 
-    /** Current file input stream */
-    private FileInputStream mFis;
+    /** Family member sizes (in bytes) */
+    private long[] memberSizes;
+
+    /** Family member modification times */
+    private long[] memberTimes;
+
+    /** Number of windows each family member is mapped in */
+    private int[] memberWindows;
 
-    /** Current File channel */
-    private FileChannel mChannel;
+    /** Mapped windows, mapped on first use and kept in least recently used order. Keyed by member and window */
+    private LinkedHashMap<Long, MappedByteBuffer> mWindows = new LinkedHashMap<Long, MappedByteBuffer>(16, 0.75f, true);
 
-    /** Current open member number */
-    private int mCurrentMember;
+    /** Bytes mapped in mWindows */
+    private long mMappedBytes = 0;
 
     /** Endianess of files */
     private ByteOrder mEndianess;
 
+    /** Control block words */
+    private int[] mControl;
+
+    /** Memory budget for cached state coordinates (in bytes) */
+    private long mCacheBudget = DEFAULT_CACHE_BUDGET;
+
+    /** Cache of state coordinates */
+    private StateCache mStateCache;
+
+    /** Directory for the index and contour limits if the family's directory can't be written, or null */
+    private File mCacheDir;
+
+    /** Set to read and write the index */
+    private boolean mUseIndex = true;
+
 
 
     /**
@@ -119,20 +200,51 @@ public class Family {
         // Get family child members
         getChildMembers();
 
-        // Open root member
-        openMember(0);
+        // Use the index file if the family hasn't changed since it was written
+        FamilyIndex index = mUseIndex ? FamilyIndex.load(this) : null;
+
+        if(index != null) {
+
+            // Endianess and control block from index
+            setFileFormat(index.getEndianess());
+
+            parseControlBlock(index.getControlBlock());
+        }
+        else {
 
-        // Work out endianess of file
-        computeFileFormat();
+            // Work out endianess of file
+            computeFileFormat();
 
-        // Read control block
-        readControlBlock();
+            // Read control block
+            readControlBlock();
+        }
 
         // Read geometry block
         readGeometry();
 
         // Declare states
-        declareStates();
+        if(index != null) {
+            stateList = index.createStates(this);
+            nstates   = stateList.length;
+        }
+        else if(declareStates() && mUseIndex) {
+
+            // Write the index in the background, it needs every state time.
+            // Not if a member couldn't be scanned - the states would be reused short
+            final Family fam = this;
+
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    FamilyIndex.save(fam);
+                }
+            });
+
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        // Cache for state coordinates
+        mStateCache = new StateCache(this, mCacheBudget);
     }
 
 
@@ -154,14 +266,9 @@ public class Family {
         //
         // TODO - Assumes 32 bit file for now
 
-        // ByteBuffer for first 17 words (72 bytes)
-
-        ByteBuffer  bb = ByteBuffer.allocateDirect( 72 );
-
-        // Read data
+        // ByteBuffer for first 18 words (72 bytes)
 
-        mChannel.position(0);
-        mChannel.read( bb );
+        ByteBuffer  bb = getMemberData(0, 0, 18);
 
 
         if(  bb.get(60) == 0 && bb.get(61) == 0 && bb.get(62) == 0  && 		/* BIG ENDIAN */
@@ -180,13 +287,24 @@ public class Family {
             mEndianess = ByteOrder.LITTLE_ENDIAN;
         }
 
-        if(ByteOrder.nativeOrder() != mEndianess) eswap = 1;
-        else                                      eswap = 0;
+        setFileFormat(mEndianess);
 
         return;
     }
 
 
+    /** Set the file format
+     * @param endianess Endianess of the files
+     */
+    private void setFileFormat(ByteOrder endianess)
+    {
+        mEndianess = endianess;
+
+        if(ByteOrder.nativeOrder() != mEndianess) eswap = 1;
+        else                                      eswap = 0;
+    }
+
+
     /** Reads the control block
      *
      * @throws IOException
@@ -195,20 +313,28 @@ public class Family {
 
         // ByteBuffer for first 64 words (256 bytes)
 
-        ByteBuffer  bb = ByteBuffer.allocateDirect( 256 );
-
-        // Byte order
-
-        bb.order(mEndianess);
+        ByteBuffer  bb = getMemberData(0, 0, 64);
 
         // Get IntBuffer view of the ByteBuffer
 
         IntBuffer   ib = bb.asIntBuffer();
 
-        // Read data
+        int[] control = new int[64];
+        ib.get(control);
+
+        parseControlBlock(control);
+    }
+
+
+    /** Sets up the family from the control block words
+     *
+     * @param control Control block words
+     */
+    private void parseControlBlock(int[] control) {
+
+        mControl = control;
 
-        mChannel.position(0);
-        mChannel.read( bb );
+        IntBuffer ib = IntBuffer.wrap(control);
 
         // Number of parts
 
@@ -222,7 +348,7 @@ public class Family {
         ndim  = ib.get(15);
         numnp = ib.get(16);
         nglbv = ib.get(18);
-        itflg = ib.get(19); // TODO - actually more complicated than this
+        itflg = ib.get(19);
         iuflg = ib.get(20);
         ivflg = ib.get(21);
         iaflg = ib.get(22);
@@ -231,6 +357,9 @@ public class Family {
         numbv = ib.get(30);
         numsv = ib.get(33);
         maxint = ib.get(36);
+        neips = ib.get(35);
+        ioshl1 = ib.get(43);
+        ioshl2 = ib.get(44);
         narbs = ib.get(39);
         nelt  = ib.get(40);
         numtv = ib.get(42);
@@ -242,7 +371,13 @@ public class Family {
         nsphv  = 0;  // TODO - deal with properly
         labags = 0;  // TODO - deal with properly
 
-        ifflg = (itflg % 10) > 1 ? 1 : 0;
+        // The units digit of itflg is the temperatures written - 1 is a temperature
+        // per node, 2 a temperature and flux, 3 three temperatures. The tens digit
+        // is mass scaling
+
+        int it = itflg % 10;
+
+        ifflg = (it == 2) ? 1 : 0;
         imflg = (itflg / 10) > 0 ? 1 : 0;
         idflg = ib.get(56);
 
@@ -259,6 +394,18 @@ public class Family {
 
         undefCoordAddr = 64;	// TODO: Remove hard coded value
 
+        solidTopAddr =   undefCoordAddr
+                + numnp * Node.L_COR;
+
+        tshellTopAddr =  undefCoordAddr
+                + numnp * Node.L_COR
+                + nel8  * 9;
+
+        beamTopAddr  =   undefCoordAddr
+                + numnp * Node.L_COR
+                + nel8  * 9
+                + nelt  * 9;
+
         shellTopAddr =   undefCoordAddr
                 + numnp * Node.L_COR
                 + nel8  * 9
@@ -268,13 +415,17 @@ public class Family {
         firstStateAddr =   undefCoordAddr  // TODO - isn't correct, doesn't take into account SPH, airbags, etc...
                 + lgeom;
 
-        lstate =  nglbv
-                + itflg * Node.L_TEM  *  numnp
-                + iuflg * Node.L_COR  *  numnp
-                + ivflg * Node.L_VEL  *  numnp
-                + iaflg * Node.L_ACC  *  numnp
-                + imflg * Node.L_MSC  *  numnp
-                + ifflg * Node.L_FLX  *  numnp
+        // Nodal data follows the time and global variables - temperatures and
+        // fluxes, mass scaling, then coordinates, velocities and accelerations
+
+        int ntem = (it == 3) ? 3 * Node.L_TEM : (it > 0 ? Node.L_TEM : 0);
+
+        setNodalBlock(State.TEMPERATURES,  1 + nglbv,   ntem);
+        setNodalBlock(State.COORDINATES,   1 + nglbv + (ntem + ifflg * Node.L_FLX + imflg * Node.L_MSC) * numnp, iuflg * Node.L_COR);
+        setNodalBlock(State.VELOCITIES,    getNodalEnd(State.COORDINATES), ivflg * Node.L_VEL);
+        setNodalBlock(State.ACCELERATIONS, getNodalEnd(State.VELOCITIES),  iaflg * Node.L_ACC);
+
+        lstate =  getNodalEnd(State.ACCELERATIONS) - 1
                 + idflg * Node.L_TDT  *  numnp
                 + numhv               *  nel8
                 + numsv               * (nel4 - nrelem)
@@ -284,6 +435,21 @@ public class Family {
                 + nsphv               *  sphnod
                 + labags;
 
+        // Element data follows the nodal data - solids, thick shells, beams then shells
+
+        shellDataOffset = getNodalEnd(State.ACCELERATIONS)
+                + idflg * Node.L_TDT  *  numnp
+                + numhv               *  nel8
+                + numtv               *  nelt
+                + numbv               *  nel2;
+
+        // Integration points through the shell thickness. A negative maxint
+        // means there is a deletion table, and below -10000 it is per element
+
+        if(maxint >= 0)          mxint = maxint;
+        else if(maxint > -10000) mxint = -maxint;
+        else                     mxint = -maxint - 10000;
+
         // Deletion table
 
         ldtab = 0;
@@ -304,17 +470,54 @@ public class Family {
     }
 
 
+    /**
+     * Records where a nodal data block is in each state
+     * @param block Block
+     * @param offset Offset from the state time (in words)
+     * @param width Values per node, 0 if the block isn't written
+     */
+    private void setNodalBlock(int block, int offset, int width) {
+
+        nodalOffset[block] = offset;
+        nodalWidth[block]  = width;
+    }
+
+
+    /**
+     * @return the offset of the word after nodal data block <block> in each state
+     */
+    private int getNodalEnd(int block) {
+        return nodalOffset[block] + nodalWidth[block] * numnp;
+    }
+
+
     /** Reads the geometry block, storing data in 'basic' classes
      *
      * @throws IOException
      */
     private void readGeometry() throws IOException {
 
+        // Read the whole geometry block in one pass, in native byte order. The
+        // nodes and elements take their data from it rather than each reading
+        // their own piece
+
+        mGeometry = toNativeOrder(getMemberData(0, undefCoordAddr, lgeom));
+
         // Get basic Node data
 
         basicNode = new Node(this);
 
-        // TODO - get Solid, beam and thick shell data
+        // Get basic Solid data
+
+        basicSolid = new Solid(this);
+
+        // Get basic Thick shell data
+
+        basicTShell = new TShell(this);
+
+        // Get basic Beam data
+
+        basicBeam = new Beam(this);
 
 
 
@@ -325,6 +528,10 @@ public class Family {
         // Get basic Part data
 
         basicPart = new Part(this);
+
+        // Exterior faces of the solid and thick shell parts - the elements inside can't be seen
+
+        basicSkin = new SolidSkin(this);
     }
 
     /**
@@ -352,6 +559,9 @@ public class Family {
         // Populate list
 
         memberNames = new String[numMembers];
+        memberSizes = new long[numMembers];
+        memberTimes = new long[numMembers];
+        memberWindows = new int[numMembers];
 
         memberNames[0] = mRootName;
 
@@ -361,74 +571,292 @@ public class Family {
             else       memberNames[i] = mRootName +       Integer.toString(i);
 
         }
+
+        // Member sizes and the number of windows needed to map each one
+
+        for(int i=0; i<numMembers; i++) {
+
+            File f = new File(memberNames[i]);
+
+            memberSizes[i] = f.length();
+            memberTimes[i] = f.lastModified();
+
+            int nwin = 1;
+            if(memberSizes[i] > MAP_WINDOW) nwin = (int)((memberSizes[i] - MAP_WINDOW + MAP_STEP - 1) / MAP_STEP) + 1;
+
+            memberWindows[i] = nwin;
+        }
     }
 
 
     /**
      * Searches for states and populates stateList[]
-     * @throws IOException
+     * @return true if every member was scanned
      */
-    private void declareStates() {
+    private boolean declareStates() {
 
-        stateList = State.scanStates(this);
+        boolean[] complete = new boolean[1];
+
+        stateList = State.scanStates(this, complete);
 
         nstates = stateList.length;
 
-        for(int i=0; i<nstates; i++) {
-            stateList[i].getTime();
+        return complete[0];
+    }
+
+
+    /**
+     * Returns <nwords> words starting at word address <addr> in family member <iMember>.
+     * The buffer is a slice of the member mapping (no data is copied) and has the byte
+     * order of the files.
+     * @param iMember Family member
+     * @param addr Address in family member (in words)
+     * @param nwords Number of words
+     * @return ByteBuffer view of the data
+     * @throws IOException
+     */
+    public ByteBuffer getMemberData(int iMember, long addr, int nwords) throws IOException {
+
+        // Check it's a valid member number
+        if(iMember < 0 || iMember > numMembers - 1) {
+            throw new IOException("<iMember> out of range in <getMemberData>");
         }
 
+        long offset = addr * 4;            // * 4 for bytes
+        long length = (long)nwords * 4;
 
-        // Close current member and set to first for now
-        openMember(0);
+        if(offset < 0 || offset + length > memberSizes[iMember]) {
+            throw new IOException("Read beyond end of " + memberNames[iMember]);
+        }
+
+        ByteBuffer bb;
+        long       base;
+
+        if(length <= MAP_STEP) {
+
+            // Use the window that contains this data. Data near the end of
+            // the member lies in the last window
+
+            int iwin = (int)Math.min(offset / MAP_STEP, memberWindows[iMember] - 1);
+
+            bb   = getMemberWindow(iMember, iwin).duplicate();
+            base = iwin * MAP_STEP;
+        }
+        else {
+
+            // Too big for a window - map it on its own
+
+            bb   = mapMemberRegion(iMember, offset, length);
+            base = offset;
+        }
+
+        bb.position((int)(offset - base));
+        bb.limit((int)(offset - base + length));
+
+        ByteBuffer slice = bb.slice();
 
+        slice.order(mEndianess != null ? mEndianess : ByteOrder.BIG_ENDIAN);
+
+        return slice;
     }
 
 
     /**
-     * Open a family member, closing the current one if needed
-     * @param iMember
+     * Returns <nwords> words of the geometry block starting at word address <addr>,
+     * in native byte order. The buffer is a slice of the block (no data is copied).
+     * @param addr Address in the root member (in words)
+     * @param nwords Number of words
+     * @return ByteBuffer view of the data
      */
-    public void openMember(int iMember) {
+    public ByteBuffer getGeometryData(long addr, int nwords) {
 
-        // Check it's a valid member number
-        if(iMember > numMembers - 1) {
-            Log.e(TAG, "<iMember> too large in <openMember>. Ignoring...");
-            return;
+        ByteBuffer bb = mGeometry.duplicate();
+
+        int offset = (int)((addr - undefCoordAddr) * 4);   // * 4 for bytes
+
+        bb.position(offset);
+        bb.limit(offset + nwords * 4);
+
+        return bb.slice().order(ByteOrder.nativeOrder());
+    }
+
+
+    /**
+     * Puts data read from the family into native byte order. If the files are
+     * already in native order the data is returned as it is, otherwise it is
+     * copied and byte swapped into a new direct buffer.
+     * @param src Data in the byte order of the files
+     * @return the data in native byte order
+     */
+    public ByteBuffer toNativeOrder(ByteBuffer src) {
+
+        if(eswap == 0) return src.order(ByteOrder.nativeOrder());
+
+        ByteBuffer dst = ByteBuffer.allocateDirect(src.remaining()).order(ByteOrder.nativeOrder());
+
+        swapCopy(src, dst);
+
+        dst.position(0);
+
+        return dst;
+    }
+
+
+    /**
+     * Copies the 32 bit words in <src> to <dst>, converting from the byte order of
+     * <src> to the byte order of <dst>. The words are moved in bulk through an int
+     * array so the platform does the byte swapping rather than a loop over words.
+     * @param src Source data
+     * @param dst Destination, with room for <src>
+     */
+    public static void swapCopy(ByteBuffer src, ByteBuffer dst) {
+
+        IntBuffer in  = src.asIntBuffer();
+        IntBuffer out = dst.asIntBuffer();
+
+        int[] chunk = new int[Math.min(SWAP_CHUNK, in.remaining())];
+
+        while(in.hasRemaining()) {
+
+            int n = Math.min(chunk.length, in.remaining());
+
+            in.get(chunk, 0, n);
+            out.put(chunk, 0, n);
         }
+    }
+
+
+    /**
+     * Returns window <iwin> of family member <iMember>, mapping it if needed.
+     * If the windows then hold more than MAP_LIMIT bytes the least recently
+     * used ones are dropped. A dropped window is unmapped once the slices of
+     * it that have been handed out are no longer used
+     * @param iMember Family member
+     * @param iwin Window number
+     * @return the mapped window
+     * @throws IOException
+     */
+    private synchronized MappedByteBuffer getMemberWindow(int iMember, int iwin) throws IOException {
+
+        Long key = ((long)iMember << 32) | iwin;
+
+        MappedByteBuffer window = mWindows.get(key);
+
+        if(window != null) return window;
+
+        long start  = iwin * MAP_STEP;
+        long length = Math.min(MAP_WINDOW, memberSizes[iMember] - start);
+
+        Iterator<Map.Entry<Long, MappedByteBuffer>> it = mWindows.entrySet().iterator();
+
+        while(it.hasNext() && mMappedBytes + length > MAP_LIMIT) {
+
+            mMappedBytes -= it.next().getValue().capacity();
+            it.remove();
+        }
+
+        window = mapMemberRegion(iMember, start, length);
+
+        mWindows.put(key, window);
+        mMappedBytes += length;
+
+        return window;
+    }
 
-        // Nothing to do if already current
-        if(mFis != null && iMember == mCurrentMember) return;
 
-        // Close current member
-        if(mFis != null) {
+    /**
+     * Maps a region of family member <iMember> read-only
+     * @param iMember Family member
+     * @param offset Start of region (in bytes)
+     * @param length Length of region (in bytes)
+     * @return the mapped region
+     * @throws IOException
+     */
+    private MappedByteBuffer mapMemberRegion(int iMember, long offset, long length) throws IOException {
+
+        RandomAccessFile file = new RandomAccessFile(memberNames[iMember], "r");
+
+        try {
+
+            // The mapping stays valid after the file is closed
+
             try {
-                mFis.close();
+                return file.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, length);
+
             } catch (IOException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
+
+                // Out of address space - dropped windows are only unmapped when
+                // they are collected, so collect them and try once more
+
+                Log.d(TAG, "Map failed, retrying after collecting dropped windows");
+
+                System.gc();
+
+                return file.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, length);
             }
+
+        } finally {
+            file.close();
         }
+    }
 
-        // Open new member
 
-        String name = memberNames[iMember];
 
-        try {
+    /**
+     * Sets the memory budget for cached state coordinates. Call before <openFamily>
+     * @param bytes Budget (in bytes)
+     */
+    public void setCacheBudget(long bytes) {
+        mCacheBudget = bytes;
+    }
 
-            mFis = new FileInputStream( name );
 
-            mChannel = mFis.getChannel( );
+    /**
+     * Sets where the index and contour limits go if they can't be written next
+     * to the root member. Call before <openFamily>
+     * @param dir Directory, e.g. the application's cache directory
+     */
+    public void setCacheDir(File dir) {
+        mCacheDir = dir;
+    }
 
-            mCurrentMember = iMember;
 
-        } catch (FileNotFoundException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
+    /**
+     * Sets whether the index is used. Without it the family is always scanned
+     * and no index is written. Call before <openFamily>
+     * @param use true to read and write the index
+     */
+    public void setUseIndex(boolean use) {
+        mUseIndex = use;
     }
 
 
+    /**
+     * Files kept with the family, such as the index, go next to the root
+     * member. If that directory can't be written they go in the cache
+     * directory instead, named after the path of the root member
+     * @param extension File extension
+     * @return the places the file can be, in the order to try them
+     */
+    public File[] getSideFiles(String extension) {
+
+        File local = new File(mRootName + extension);
+
+        if(mCacheDir == null) return new File[] { local };
+
+        String key = new File(mRootName).getAbsolutePath().replace(File.separatorChar, '_');
+
+        return new File[] { local, new File(mCacheDir, key + extension) };
+    }
+
+
+    /**
+     * @return the cache of state coordinates
+     */
+    public StateCache getStateCache() {
+        return mStateCache;
+    }
+
 
     /**
      * @return the mRootName
@@ -510,6 +938,30 @@ public class Family {
     }
 
 
+    /**
+     * @return the address of the solid topology
+     */
+    public long getSolidTopAddr() {
+        return solidTopAddr;
+    }
+
+
+    /**
+     * @return the address of the thick shell topology
+     */
+    public long getTShellTopAddr() {
+        return tshellTopAddr;
+    }
+
+
+    /**
+     * @return the address of the beam topology
+     */
+    public long getBeamTopAddr() {
+        return beamTopAddr;
+    }
+
+
     /**
      * @return the address of the shell topology
      */
@@ -542,6 +994,38 @@ public class Family {
     }
 
 
+    /**
+     * @return the basicSolid
+     */
+    public Solid getBasicSolid() {
+        return basicSolid;
+    }
+
+
+    /**
+     * @return the basicSkin
+     */
+    public SolidSkin getBasicSkin() {
+        return basicSkin;
+    }
+
+
+    /**
+     * @return the basicTShell
+     */
+    public TShell getBasicTShell() {
+        return basicTShell;
+    }
+
+
+    /**
+     * @return the basicBeam
+     */
+    public Beam getBasicBeam() {
+        return basicBeam;
+    }
+
+
     /**
      * @return the basicPart
      */
@@ -558,12 +1042,84 @@ public class Family {
     }
 
     /**
-     * @return the current FileChannel
+     * @param block Nodal data block - State.COORDINATES, State.VELOCITIES, State.ACCELERATIONS or State.TEMPERATURES
+     * @return the offset of the block from the start of each state (in words), or -1 if the states don't have it
      */
-    public FileChannel getFileChannel() {
-        return mChannel;
+    public int getNodalOffset(int block) {
+        return nodalWidth[block] > 0 ? nodalOffset[block] : -1;
     }
 
+
+    /**
+     * @param block Nodal data block
+     * @return the number of values per node in the block, 0 if the states don't have it
+     */
+    public int getNodalWidth(int block) {
+        return nodalWidth[block];
+    }
+
+
+    /**
+     * @return the number of results per shell in each state
+     */
+    public int getNumShellVariables() {
+        return numsv;
+    }
+
+
+    /**
+     * @return the number of integration points through the thickness of the shells
+     */
+    public int getNumIntPoints() {
+        return mxint;
+    }
+
+
+    /**
+     * @return the offset of the shell results from the start of each state (in words), or -1 if the states don't have any
+     */
+    public int getShellDataOffset() {
+        return numsv > 0 && nel4 > 0 ? shellDataOffset : -1;
+    }
+
+
+    /**
+     * Each shell's results start with a set for each integration point - six
+     * stresses, the effective plastic strain, then <neips> extra values. The
+     * stresses and strain are only there if the ioshl flags say so
+     * @return the number of results for each integration point of a shell
+     */
+    private int getShellIpWidth() {
+        return (ioshl1 == 1000 ? 6 : 0) + (ioshl2 == 1000 ? 1 : 0) + neips;
+    }
+
+
+    /**
+     * @param ip Integration point, from 0
+     * @return the offset of the stresses (sx, sy, sz, sxy, syz, szx) at an integration
+     *         point in each shell's results, or -1 if they aren't written
+     */
+    public int getShellStressOffset(int ip) {
+
+        if(getShellDataOffset() < 0 || ioshl1 != 1000 || ip < 0 || ip >= mxint) return -1;
+
+        return ip * getShellIpWidth();
+    }
+
+
+    /**
+     * @param ip Integration point, from 0
+     * @return the offset of the effective plastic strain at an integration point
+     *         in each shell's results, or -1 if it isn't written
+     */
+    public int getShellStrainOffset(int ip) {
+
+        if(getShellDataOffset() < 0 || ioshl2 != 1000 || ip < 0 || ip >= mxint) return -1;
+
+        return ip * getShellIpWidth() + (ioshl1 == 1000 ? 6 : 0);
+    }
+
+
     /**
      * @return the eswap flag
      */
@@ -634,6 +1190,32 @@ public class Family {
     }
 
 
+    /**
+     * @param iMember Family member
+     * @return the size of family member <iMember> (in bytes)
+     */
+    public long getMemberSize(int iMember) {
+        return memberSizes[iMember];
+    }
+
+
+    /**
+     * @param iMember Family member
+     * @return the modification time of family member <iMember>
+     */
+    public long getMemberTime(int iMember) {
+        return memberTimes[iMember];
+    }
+
+
+    /**
+     * @return the control block words
+     */
+    public int[] getControlBlock() {
+        return mControl;
+    }
+
+
     /**
      * @return the memberNames
      */
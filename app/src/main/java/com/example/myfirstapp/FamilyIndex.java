@@ -0,0 +1,204 @@
+package com.example.myfirstapp;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+/**
+ * Index file kept next to the root member of a family (or in the cache
+ * directory if that can't be written), so that reopening
+ * an unchanged family doesn't need to work out the file format, read the
+ * control block or scan for states.
+ *
+ * The index is a SideFile, so it is only used if every member still has
+ * the same size and modification time. It holds the endianess, the control
+ * block words, and the member, address and time of each state.
+ */
+public class FamilyIndex {
+
+    /** Index file extension */
+    private final static String EXTENSION = ".idx";
+
+    /** Identifies an index file ("D3IX") */
+    private final static int MAGIC = 0x44334958;
+
+    /** Number of control block words */
+    private final static int L_CONTROL = 64;
+
+    /** Index file version - change if the layout or the way state addresses are worked out changes */
+    private final static int VERSION = 3;
+
+    /** Endianess of files */
+    private ByteOrder mEndianess;
+
+    /** Control block words */
+    private int[] mControl;
+
+    /** State member numbers */
+    private int[] mStateMember;
+
+    /** State addresses (in words) */
+    private long[] mStateAddr;
+
+    /** State times */
+    private float[] mStateTime;
+
+
+
+    /**
+     * FamilyIndex constructor
+     */
+    private FamilyIndex() {
+        super();
+    }
+
+
+    /**
+     * Loads the index for a family. The family members must already have been found.
+     * @param fam Family
+     * @return the index, or null if there isn't a valid one
+     */
+    public static FamilyIndex load(final Family fam) {
+
+        final FamilyIndex index = new FamilyIndex();
+
+        boolean loaded = SideFile.load(fam, EXTENSION, MAGIC, VERSION, new SideFile.Reader() {
+            public boolean read(DataInputStream in) throws IOException {
+                return index.read(in, fam);
+            }
+        });
+
+        return loaded ? index : null;
+    }
+
+
+    /**
+     * Reads and validates the index, after the side file header
+     * @param in Input stream
+     * @param fam Family
+     * @return true if it is valid
+     * @throws IOException
+     */
+    private boolean read(DataInputStream in, Family fam) throws IOException {
+
+        // Endianess
+
+        mEndianess = in.readBoolean() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+
+        // Control block. Lengths are checked before anything is allocated, so a
+        // corrupt index is just out of date
+
+        if(in.readInt() != L_CONTROL) return false;
+
+        mControl = new int[L_CONTROL];
+
+        for(int i=0; i<L_CONTROL; i++) mControl[i] = in.readInt();
+
+        // States - there can't be more than there are words in the members
+
+        long totalSize = 0;
+
+        for(int i=0; i<fam.getNumMembers(); i++) totalSize += fam.getMemberSize(i);
+
+        int nstates = in.readInt();
+
+        if(nstates < 0 || nstates > totalSize / 4) return false;
+
+        mStateMember = new int[nstates];
+        mStateAddr   = new long[nstates];
+        mStateTime   = new float[nstates];
+
+        for(int i=0; i<nstates; i++) {
+            mStateMember[i] = in.readInt();
+            mStateAddr[i]   = in.readLong();
+            mStateTime[i]   = in.readFloat();
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Writes the index for a family that has been opened. Failure is not an
+     * error - the family is just scanned again next time.
+     * @param fam Family
+     */
+    public static void save(final Family fam) {
+
+        SideFile.save(fam, EXTENSION, MAGIC, VERSION, new SideFile.Writer() {
+            public void write(DataOutputStream out) throws IOException {
+                FamilyIndex.write(out, fam);
+            }
+        });
+    }
+
+
+    /**
+     * Writes the index, after the side file header
+     * @param out Output stream
+     * @param fam Family
+     * @throws IOException
+     */
+    private static void write(DataOutputStream out, Family fam) throws IOException {
+
+        // Endianess
+
+        out.writeBoolean(fam.getEndianess() == ByteOrder.BIG_ENDIAN);
+
+        // Control block
+
+        int[] control = fam.getControlBlock();
+
+        out.writeInt(control.length);
+
+        for(int i=0; i<control.length; i++) out.writeInt(control[i]);
+
+        // States
+
+        int nstates = fam.getNumOfStates();
+
+        out.writeInt(nstates);
+
+        for(int i=1; i<=nstates; i++) {
+
+            State state = fam.getStateFromID(i);
+
+            out.writeInt(state.mMember);
+            out.writeLong(state.mAddr);
+            out.writeFloat(state.getTime());
+        }
+    }
+
+
+    /**
+     * @param fam Family
+     * @return the states in the index
+     */
+    public State[] createStates(Family fam) {
+
+        State[] states = new State[mStateAddr.length];
+
+        for(int i=0; i<states.length; i++) {
+            states[i] = new State(fam, i + 1, mStateMember[i], mStateAddr[i], mStateTime[i]);
+        }
+
+        return states;
+    }
+
+
+    /**
+     * @return the Endianess of the files
+     */
+    public ByteOrder getEndianess() {
+        return mEndianess;
+    }
+
+
+    /**
+     * @return the control block words
+     */
+    public int[] getControlBlock() {
+        return mControl;
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.myfirstapp;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * Times the stages of each frame, keeping the last few hundred frames of
+ * each stage so percentiles can be shown or written out.
+ *
+ * The renderer brackets each piece of work with begin() and end(). A stage
+ * can run several times in a frame (once per batch), and its times are
+ * added up. endFrame() then records the total for each stage that ran.
+ * Stages that didn't run in a frame, such as reading a state when the
+ * frame didn't change, aren't recorded, so their percentiles only cover
+ * the frames that did the work.
+ *
+ * Recording doesn't allocate. Only getSummary() and dump() do, and they are
+ * called from the UI thread now and again.
+ */
+public class FrameStats {
+
+    private final static String TAG = "FRAME_STATS";
+
+    /** Stages */
+    final static int STATE_IO = 0;    // Getting the state coordinates - from the cache or the disk
+    final static int POPULATE = 1;    // Gathering vertex data (native) and nodal normals
+    final static int UPLOAD   = 2;    // Copying vertex data to the VBOs
+    final static int DRAW     = 3;    // Issuing the draw calls
+    final static int FRAME    = 4;    // All of onDrawFrame
+
+    private final static int NUM_STAGES = 5;
+
+    private final static String[] STAGE_NAMES = { "State I/O", "Populate", "Upload", "Draw", "Frame" };
+
+    /** Frames kept for each stage */
+    private final static int WINDOW = 256;
+
+    /** Percentiles reported */
+    private final static float[] PERCENTILES = { 50.0f, 95.0f, 99.0f };
+
+    /** Start time of each stage, ns */
+    private long[] mStart = new long[NUM_STAGES];
+
+    /** Time of each stage so far this frame, ns */
+    private long[] mCurrent = new long[NUM_STAGES];
+
+    /** Set if the stage ran this frame */
+    private boolean[] mRan = new boolean[NUM_STAGES];
+
+    /** Last WINDOW times of each stage, ns */
+    private long[][] mSamples = new long[NUM_STAGES][WINDOW];
+
+    /** Next slot, and number of times held, for each stage */
+    private int[] mNext  = new int[NUM_STAGES];
+    private int[] mCount = new int[NUM_STAGES];
+
+    /** Frames recorded */
+    private long mFrames = 0;
+
+    /** Work array for percentiles */
+    private long[] mSorted = new long[WINDOW];
+
+
+
+    /**
+     * FrameStats constructor
+     */
+    public FrameStats() {
+        super();
+    }
+
+
+    /**
+     * Starts timing a stage
+     * @param stage Stage
+     */
+    public void begin(int stage) {
+        mStart[stage] = System.nanoTime();
+    }
+
+
+    /**
+     * Stops timing a stage, adding the time to this frame's
+     * @param stage Stage
+     */
+    public void end(int stage) {
+
+        mCurrent[stage] += System.nanoTime() - mStart[stage];
+        mRan[stage]      = true;
+    }
+
+
+    /**
+     * Records the times of the stages that ran this frame
+     */
+    public synchronized void endFrame() {
+
+        for(int s=0; s<NUM_STAGES; s++) {
+
+            if(mRan[s]) {
+
+                mSamples[s][mNext[s]] = mCurrent[s];
+
+                mNext[s]  = (mNext[s] + 1) % WINDOW;
+                mCount[s] = Math.min(mCount[s] + 1, WINDOW);
+            }
+
+            mCurrent[s] = 0;
+            mRan[s]     = false;
+        }
+
+        mFrames++;
+    }
+
+
+    /**
+     * Gets the percentiles of a stage's recent times
+     * @param stage Stage
+     * @param ms The 50th, 95th and 99th percentile times in ms - filled in. 0 if the stage hasn't run
+     */
+    public synchronized void getPercentiles(int stage, float[] ms) {
+
+        int n = mCount[stage];
+
+        System.arraycopy(mSamples[stage], 0, mSorted, 0, n);
+
+        Arrays.sort(mSorted, 0, n);
+
+        for(int i=0; i<PERCENTILES.length; i++) {
+
+            // Nearest rank
+
+            int rank = (int)Math.ceil(PERCENTILES[i] / 100.0f * n) - 1;
+
+            ms[i] = n > 0 ? mSorted[Math.max(0, rank)] * 1.0e-6f : 0.0f;
+        }
+    }
+
+
+    /**
+     * @return one line per stage with its percentiles, for display
+     */
+    public String getSummary() {
+
+        float[] ms = new float[PERCENTILES.length];
+
+        StringBuilder sb = new StringBuilder();
+
+        sb.append(String.format("%-10s %7s %7s %7s\n", "ms", "p50", "p95", "p99"));
+
+        for(int s=0; s<NUM_STAGES; s++) {
+
+            getPercentiles(s, ms);
+
+            sb.append(String.format("%-10s %7.2f %7.2f %7.2f\n", STAGE_NAMES[s], ms[0], ms[1], ms[2]));
+        }
+
+        return sb.toString();
+    }
+
+
+    /**
+     * Writes the percentiles and the recent times of each stage to a file
+     * @param file File
+     * @return true if it was written
+     */
+    public boolean dump(File file) {
+
+        PrintWriter out = null;
+
+        try {
+            out = new PrintWriter(new FileWriter(file));
+
+            long frames;
+
+            synchronized(this) { frames = mFrames; }
+
+            out.println("Frames " + Long.toString(frames));
+            out.println();
+            out.print(getSummary());
+
+            // Times oldest first, ms
+
+            for(int s=0; s<NUM_STAGES; s++) {
+
+                out.println();
+                out.println(STAGE_NAMES[s]);
+
+                synchronized(this) {
+
+                    int n     = mCount[s];
+                    int first = (mNext[s] - n + WINDOW) % WINDOW;
+
+                    for(int i=0; i<n; i++) {
+                        out.println(String.format("%.3f", mSamples[s][(first + i) % WINDOW] * 1.0e-6f));
+                    }
+                }
+            }
+
+            Log.d(TAG, "Frame stats written to " + file.getPath());
+
+            return true;
+
+        } catch (IOException e) {
+
+            Log.d(TAG, "Failed to write " + file.getPath());
+
+            return false;
+
+        } finally {
+            if(out != null) out.close();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.myfirstapp;
+
+import java.nio.FloatBuffer;
+
+/**
+ * The view volume of a model view projection matrix, for culling meshes
+ * that can't be seen.
+ *
+ * The six planes are taken straight from the rows of the matrix, so they
+ * are in model space and a box can be tested without transforming it. A
+ * box is only culled if it is entirely outside one plane, so a few boxes
+ * near the corners of the view are drawn when they needn't be.
+ */
+public class Frustum {
+
+    /** Number of planes */
+    private final static int NUM_PLANES = 6;
+
+    /** Size of a plane - a, b, c, d of ax + by + cz + d >= 0 inside */
+    private final static int L_PLANE = 4;
+
+    /** Size of a box - min x, y, z then max x, y, z */
+    final static int L_BOUNDS = 6;
+
+    /** Planes */
+    private float[] mPlanes = new float[NUM_PLANES * L_PLANE];
+
+
+
+    /**
+     * Frustum constructor
+     */
+    public Frustum() {
+        super();
+    }
+
+
+    /**
+     * Sets the planes from a model view projection matrix
+     * @param mvp Model view projection matrix, column major as android.opengl.Matrix
+     */
+    public void update(float[] mvp) {
+
+        // Inside is -w <= x, y, z <= w, so each plane is the fourth row plus or minus one of the others
+
+        for(int r=0; r<3; r++) {
+            for(int j=0; j<L_PLANE; j++) {
+
+                float w = mvp[3 + 4*j];
+                float v = mvp[r + 4*j];
+
+                mPlanes[(2*r)     * L_PLANE + j] = w + v;
+                mPlanes[(2*r + 1) * L_PLANE + j] = w - v;
+            }
+        }
+    }
+
+
+    /**
+     * @param bounds Boxes
+     * @param offset Start of the box in <bounds>
+     * @return false if the box is entirely outside the view
+     */
+    public boolean isVisible(FloatBuffer bounds, int offset) {
+
+        float minX = bounds.get(offset);
+        float minY = bounds.get(offset + 1);
+        float minZ = bounds.get(offset + 2);
+        float maxX = bounds.get(offset + 3);
+        float maxY = bounds.get(offset + 4);
+        float maxZ = bounds.get(offset + 5);
+
+        // Empty box
+        if(minX > maxX) return false;
+
+        for(int i=0; i<NUM_PLANES; i++) {
+
+            int p = i * L_PLANE;
+
+            float a = mPlanes[p];
+            float b = mPlanes[p + 1];
+            float c = mPlanes[p + 2];
+            float d = mPlanes[p + 3];
+
+            // Corner of the box furthest inside the plane
+
+            float x = a >= 0.0f ? maxX : minX;
+            float y = b >= 0.0f ? maxY : minY;
+            float z = c >= 0.0f ? maxZ : minZ;
+
+            if(a*x + b*y + c*z + d < 0.0f) return false;
+        }
+
+        return true;
+    }
+}
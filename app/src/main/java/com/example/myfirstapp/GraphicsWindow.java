@@ -13,6 +13,9 @@ import android.view.MotionEvent;
 import android.view.View;
 import android.widget.Button;
 import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import java.io.File;
 
 public class GraphicsWindow extends Activity
 {
@@ -21,6 +24,31 @@ public class GraphicsWindow extends Activity
 
     private Family myFamily;
 
+    /** Smooth shading flag */
+    private boolean mSmooth = false;
+
+    /** Frame stats overlay flag */
+    private boolean mShowStats = false;
+
+    /** Frame stats overlay */
+    private TextView mStatsView;
+
+    /** How often the frame stats overlay is refreshed, ms */
+    private final static long STATS_INTERVAL = 500;
+
+    /** Refreshes the frame stats overlay while it is shown */
+    private final Runnable mStatsUpdater = new Runnable() {
+        public void run() {
+
+            if(!mShowStats) return;
+
+            MyRenderer renderer = mGLSurfaceView.getRenderer();
+
+            mStatsView.setText("Vertices: " + renderer.getVertexKernelName() + "\n" + renderer.getStats().getSummary());
+            mStatsView.postDelayed(this, STATS_INTERVAL);
+        }
+    };
+
     @Override
     public void onCreate(Bundle savedInstanceState)
     {
@@ -51,6 +79,19 @@ public class GraphicsWindow extends Activity
             FrameLayout frame = (FrameLayout)findViewById(R.id.myframelayout);
             if(frame != null) frame.addView(mGLSurfaceView, 0);
 
+            mStatsView = (TextView)findViewById(R.id.stats_overlay);
+
+            // Tapping the stats switches between the native and Java vertex kernels, to compare them
+
+            mStatsView.setOnClickListener(new View.OnClickListener() {
+                public void onClick(View v) {
+
+                    MyRenderer renderer = mGLSurfaceView.getRenderer();
+
+                    renderer.setVertexKernel(renderer.getVertexKernel() == VertexBuilder.NATIVE ? VertexBuilder.JAVA : VertexBuilder.NATIVE);
+                }
+            });
+
         }
         else
         {
@@ -78,6 +119,17 @@ public class GraphicsWindow extends Activity
         mGLSurfaceView.onPause();
     }
 
+    @Override
+    protected void onDestroy()
+    {
+        super.onDestroy();
+
+        if(mStatsView != null) mStatsView.removeCallbacks(mStatsUpdater);
+
+        // Stop the renderer's background work
+        if(mGLSurfaceView != null) mGLSurfaceView.getRenderer().release();
+    }
+
 
 
     /** Toggles the animation on/off when the button is clicked */
@@ -102,6 +154,86 @@ public class GraphicsWindow extends Activity
     }
 
 
+    /**
+     * Contours a shell result when the button is clicked - von Mises, then
+     * plastic strain the next time
+     */
+    public void doStressPlot(View view)
+    {
+        MyRenderer renderer = mGLSurfaceView.getRenderer();
+
+        int quantity = renderer.getShellPlot() == ShellResults.VON_MISES ? ShellResults.PLASTIC_STRAIN : ShellResults.VON_MISES;
+
+        renderer.setShellPlot(quantity);
+
+        ((Button) view).setText(quantity == ShellResults.VON_MISES ? R.string.plastic_strain : R.string.von_mises);
+    }
+
+
+    /** Steps through the shell integration points when the button is clicked */
+    public void nextIntPoint(View view)
+    {
+        MyRenderer renderer = mGLSurfaceView.getRenderer();
+
+        int n = Math.max(1, renderer.getNumIntPoints());
+
+        renderer.setIntPoint((renderer.getIntPoint() + 1) % n);
+
+        ((Button) view).setText(getString(R.string.int_point, renderer.getIntPoint() + 1));
+    }
+
+
+    /** Toggles smooth shading on/off when the button is clicked */
+    public void toggleSmooth(View view)
+    {
+        mSmooth = !mSmooth;
+
+        mGLSurfaceView.getRenderer().setSmooth(mSmooth);
+
+        ((Button) view).setText(mSmooth ? R.string.flat : R.string.smooth);
+    }
+
+
+    /**
+     * Shows/hides the frame stats overlay when the button is clicked. When it
+     * is hidden the stats are written to frame_stats.txt in the app's files
+     */
+    public void toggleStats(View view)
+    {
+        mShowStats = !mShowStats;
+
+        if(mShowStats) {
+            mStatsView.setVisibility(View.VISIBLE);
+            mStatsView.post(mStatsUpdater);
+        }
+        else {
+            mStatsView.removeCallbacks(mStatsUpdater);
+            mStatsView.setVisibility(View.GONE);
+
+            // Written off the UI thread
+
+            File dir = getExternalFilesDir(null);
+
+            if(dir != null) {
+
+                final File file = new File(dir, "frame_stats.txt");
+                final FrameStats stats = mGLSurfaceView.getRenderer().getStats();
+
+                Thread thread = new Thread(new Runnable() {
+                    public void run() {
+                        stats.dump(file);
+                    }
+                });
+
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+
+        ((Button) view).setText(mShowStats ? R.string.hide_stats : R.string.stats);
+    }
+
+
     /** Previous state */
     public void prevState(View view)
     {
@@ -189,6 +321,9 @@ class MyGLSurfaceView extends GLSurfaceView
                 start.set(e.getX(), e.getY());
                 mode = ROT;
 
+                // Draw the coarse meshes until the gesture ends
+                mRenderer.setInteractive(true);
+
                 break;
 
             case MotionEvent.ACTION_POINTER_DOWN:
@@ -222,10 +357,12 @@ class MyGLSurfaceView extends GLSurfaceView
             case MotionEvent.ACTION_UP:
             case MotionEvent.ACTION_POINTER_UP:
 
-                // 1st, 2nd or 3rd finger up - finish gesture
+                // 1st, 2nd or 3rd finger up - finish gesture and go back to the full meshes
 
                 mode = NONE;
 
+                mRenderer.setInteractive(false);
+
                 break;
 
             case MotionEvent.ACTION_MOVE:
@@ -266,6 +403,9 @@ class MyGLSurfaceView extends GLSurfaceView
                     start.set(e.getX(), e.getY());  // Reset location for next movement
                 }
 
+                // Coarse meshes while a gesture is moving the model
+                mRenderer.setInteractive(mode != NONE);
+
                 // Explicit call to render. No need if we're animating as
                 // render mode will have been set to RENDERMODE_CONTINUOUSLY
                 if(!mRenderer.isAnimating()) requestRender();
@@ -19,6 +19,8 @@ import java.io.IOException;
 
 public class MainActivity extends Activity {
 
+    /** Memory budget for cached state coordinates (in bytes) */
+    private long mCacheBudget;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -33,6 +35,17 @@ public class MainActivity extends Activity {
         int memoryClass = am.getMemoryClass();
         Log.d("onCreate", "memoryClass:" + Integer.toString(memoryClass));
 
+        // Budget for cached state coordinates - a quarter of the app's heap plus
+        // an eighth of the free device memory above the low memory threshold
+
+        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+        am.getMemoryInfo(memoryInfo);
+
+        mCacheBudget =   (long)memoryClass * 1024 * 1024 / 4
+                       + Math.max(0, memoryInfo.availMem - memoryInfo.threshold) / 8;
+
+        Log.d("onCreate", "cacheBudget:" + Long.toString(mCacheBudget / (1024 * 1024)) + "MB");
+
 
         setContentView(R.layout.activity_main);
     }
@@ -82,6 +95,11 @@ public class MainActivity extends Activity {
 
         final Family myFamily = new Family(fname);
 
+        myFamily.setCacheBudget(mCacheBudget);
+
+        // The index goes here if the model's directory can't be written
+        myFamily.setCacheDir(getCacheDir());
+
         // Store in Application so other parts of the App can see it
 
         MyApplication myApp = (MyApplication) getApplication();
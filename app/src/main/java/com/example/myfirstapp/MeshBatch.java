@@ -0,0 +1,229 @@
+package com.example.myfirstapp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+
+/**
+ * Part meshes packed into one set of buffers, so they can be drawn with
+ * a few calls rather than one per mesh.
+ *
+ * The vertices of the meshes are laid end to end, and so are their indices,
+ * which are offset to point at the mesh's vertices in the batch. Each vertex
+ * carries the colour of its part, so a run of neighbouring meshes that are
+ * all on screen is a single draw call. Indices are unsigned shorts, so a
+ * batch holds at most PartMesh.MAX_VERTICES vertices, and triangles and
+ * lines are never mixed in a batch.
+ *
+ * Once in a batch, a mesh's nodes and indices are views of the batch's.
+ */
+public class MeshBatch {
+
+    /** Bytes per vertex colour - RGBA */
+    final static int COLOUR_DATA_SIZE = 4;
+
+    /** True if drawn as lines, otherwise triangles */
+    boolean mLines;
+
+    /** Meshes in the batch */
+    PartMesh[] mMeshes;
+
+    /** Position of the first mesh in the list the batches were made from */
+    int mFirstMesh;
+
+    /** Number of vertices */
+    int mNumVertices;
+
+    /** Internal node for each vertex */
+    IntBuffer mNodes;
+
+    /** Part colour for each vertex */
+    ByteBuffer mColours;
+
+    /** Number of indices */
+    int mNumIndices;
+
+    /** Indices of all the meshes */
+    ShortBuffer mIndices;
+
+    /** Number of coarse mesh indices */
+    int mNumLodIndices;
+
+    /** Coarse indices of all the meshes - the full indices for meshes without a coarse version */
+    ShortBuffer mLodIndices;
+
+    /** Start and number of each mesh's coarse indices */
+    int[] mLodFirst;
+    int[] mLodCount;
+
+
+
+    /**
+     * MeshBatch constructor. Packs the meshes' buffers into the batch's
+     * @param meshes Meshes - all triangles or all lines
+     * @param firstMesh Position of the first mesh in the full list
+     */
+    private MeshBatch(ArrayList<PartMesh> meshes, int firstMesh) {
+        super();
+
+        mMeshes = new PartMesh[meshes.size()];
+        meshes.toArray(mMeshes);
+
+        mFirstMesh = firstMesh;
+        mLines     = mMeshes[0].mLines;
+
+        for(int i=0; i<mMeshes.length; i++) {
+            mNumVertices += mMeshes[i].mNumVertices;
+            mNumIndices  += mMeshes[i].mNumIndices;
+        }
+
+        mNodes   = ByteBuffer.allocateDirect(mNumVertices * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        mColours = ByteBuffer.allocateDirect(mNumVertices * COLOUR_DATA_SIZE).order(ByteOrder.nativeOrder());
+        mIndices = ByteBuffer.allocateDirect(mNumIndices * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
+
+        int nv = 0, ni = 0;
+
+        for(int i=0; i<mMeshes.length; i++) {
+
+            PartMesh mesh = mMeshes[i];
+
+            float[] rgb = Part.getDefaultColour(mesh.mPart);
+
+            for(int j=0; j<mesh.mNumVertices; j++) {
+
+                mNodes.put(nv + j, mesh.mNodes.get(j));
+
+                mColours.put((byte)Math.round(255.0f * rgb[0]));
+                mColours.put((byte)Math.round(255.0f * rgb[1]));
+                mColours.put((byte)Math.round(255.0f * rgb[2]));
+                mColours.put((byte)255);
+            }
+
+            for(int j=0; j<mesh.mNumIndices; j++) {
+                mIndices.put(ni + j, (short)((mesh.mIndices.get(j) & 0xffff) + nv));
+            }
+
+            // The mesh now points into the batch
+
+            mesh.mFirstVertex = nv;
+            mesh.mFirstIndex  = ni;
+
+            mesh.mNodes   = slice(mNodes, nv, mesh.mNumVertices);
+            mesh.mIndices = slice(mIndices, ni, mesh.mNumIndices);
+
+            nv += mesh.mNumVertices;
+            ni += mesh.mNumIndices;
+        }
+
+        mColours.position(0);
+    }
+
+
+    /**
+     * Packs meshes into batches. Meshes are only batched with their neighbours,
+     * so give the triangle meshes first and the line meshes after
+     * @param meshes Meshes
+     * @return the batches
+     */
+    public static MeshBatch[] createBatches(PartMesh[] meshes) {
+
+        ArrayList<MeshBatch> batches = new ArrayList<MeshBatch>();
+
+        ArrayList<PartMesh> batch = new ArrayList<PartMesh>();
+
+        int first = 0, nv = 0;
+
+        for(int i=0; i<meshes.length; i++) {
+
+            PartMesh mesh = meshes[i];
+
+            // Start a new batch if this mesh won't fit, or is a different kind
+
+            if(!batch.isEmpty() && (nv + mesh.mNumVertices > PartMesh.MAX_VERTICES || mesh.mLines != batch.get(0).mLines)) {
+
+                batches.add(new MeshBatch(batch, first));
+
+                batch.clear();
+
+                first = i;
+                nv    = 0;
+            }
+
+            batch.add(mesh);
+
+            nv += mesh.mNumVertices;
+        }
+
+        if(!batch.isEmpty()) batches.add(new MeshBatch(batch, first));
+
+        MeshBatch[] result = new MeshBatch[batches.size()];
+        batches.toArray(result);
+
+        return result;
+    }
+
+
+    /**
+     * Packs the coarse indices of the meshes, once they have been built
+     */
+    public void createLodIndices() {
+
+        mLodFirst = new int[mMeshes.length];
+        mLodCount = new int[mMeshes.length];
+
+        mNumLodIndices = 0;
+
+        for(int i=0; i<mMeshes.length; i++) {
+
+            PartMesh mesh = mMeshes[i];
+
+            mLodFirst[i] = mNumLodIndices;
+            mLodCount[i] = mesh.mLodIndices != null ? mesh.mNumLodIndices : mesh.mNumIndices;
+
+            mNumLodIndices += mLodCount[i];
+        }
+
+        ShortBuffer indices = ByteBuffer.allocateDirect(Math.max(1, mNumLodIndices) * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
+
+        for(int i=0; i<mMeshes.length; i++) {
+
+            PartMesh mesh = mMeshes[i];
+
+            ShortBuffer src = mesh.mLodIndices != null ? mesh.mLodIndices : mesh.mIndices;
+
+            for(int j=0; j<mLodCount[i]; j++) indices.put(mLodFirst[i] + j, src.get(j));
+        }
+
+        mLodIndices = indices;
+    }
+
+
+    /**
+     * @return a view of <n> entries of <buf> from <first>
+     */
+    private static IntBuffer slice(IntBuffer buf, int first, int n) {
+
+        IntBuffer view = buf.duplicate();
+
+        view.position(first);
+        view.limit(first + n);
+
+        return view.slice();
+    }
+
+
+    /**
+     * @return a view of <n> entries of <buf> from <first>
+     */
+    private static ShortBuffer slice(ShortBuffer buf, int first, int n) {
+
+        ShortBuffer view = buf.duplicate();
+
+        view.position(first);
+        view.limit(first + n);
+
+        return view.slice();
+    }
+}
@@ -0,0 +1,239 @@
+package com.example.myfirstapp;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Coarse versions of the part meshes, drawn while the model is being moved.
+ *
+ * The meshes are decimated by vertex clustering. The undeformed model is
+ * split into a grid of cells and every vertex in a cell is replaced by the
+ * first vertex of the mesh in that cell. Triangles and lines that collapse
+ * are dropped. Only the indices change, so a coarse mesh draws from the same
+ * vertex buffers as the full mesh and follows the deformed shape, contours
+ * and normals of every state without any extra work.
+ *
+ * The coarse indices are built on a background thread once the meshes have
+ * been batched, and packed per batch. The renderer uploads them when
+ * isReady() says they are done.
+ */
+public class MeshLod implements Runnable {
+
+    private final static String TAG = "MESH_LOD";
+
+    /** Cells along the model diagonal */
+    private final static int CELLS_PER_DIAG = 200;
+
+    /** Keep the full mesh unless the coarse one has at most this fraction of the indices */
+    private final static float MAX_FRACTION = 0.9f;
+
+    /** Bits for each cell coordinate and for the vertex in a sort key */
+    private final static int CELL_BITS   = 15;
+    private final static int VERTEX_BITS = 16;
+
+    /** Meshes to decimate */
+    private PartMesh[] mMeshes;
+
+    /** Batches the meshes are in */
+    private MeshBatch[] mBatches;
+
+    /** Undeformed coordinates */
+    private FloatBuffer mUndef;
+
+    /** Grid origin */
+    private float mMinX;
+    private float mMinY;
+    private float mMinZ;
+
+    /** Cell size */
+    private float mCellSize;
+
+    /** Set when the coarse meshes are all built */
+    private volatile boolean mReady = false;
+
+    /** Set to stop building */
+    private volatile boolean mStopped = false;
+
+    /** Background thread */
+    private Thread mThread;
+
+
+
+    /**
+     * MeshLod constructor. Starts building the coarse meshes in the background
+     * @param meshes Meshes to decimate
+     * @param batches Batches the meshes are in
+     * @param undef Undeformed coordinates
+     * @param bounds Model bounds - min x, y, z then max x, y, z
+     * @param diag Model diagonal
+     */
+    public MeshLod(PartMesh[] meshes, MeshBatch[] batches, FloatBuffer undef, float[] bounds, float diag) {
+        super();
+
+        mMeshes  = meshes;
+        mBatches = batches;
+        mUndef   = undef;
+
+        mMinX = bounds[0];
+        mMinY = bounds[1];
+        mMinZ = bounds[2];
+
+        mCellSize = diag > 0.0f ? diag / CELLS_PER_DIAG : 1.0f;
+
+        mThread = new Thread(this, TAG);
+        mThread.setDaemon(true);
+        mThread.setPriority(Thread.MIN_PRIORITY);
+        mThread.start();
+    }
+
+
+    @Override
+    public void run() {
+
+        long t0 = System.currentTimeMillis();
+
+        Parallel.run(mMeshes.length, new Parallel.RangeTask() {
+            public void run(int first, int last) {
+
+                for(int i=first; i<last && !mStopped; i++) decimate(mMeshes[i]);
+            }
+        });
+
+        if(mStopped) return;
+
+        for(int i=0; i<mBatches.length; i++) mBatches[i].createLodIndices();
+
+        int full = 0, coarse = 0;
+
+        for(int i=0; i<mMeshes.length; i++) {
+            full   += mMeshes[i].mNumIndices;
+            coarse += mMeshes[i].mLodIndices != null ? mMeshes[i].mNumLodIndices : mMeshes[i].mNumIndices;
+        }
+
+        Log.d(TAG, "Decimated " + Integer.toString(full) + " indices to " + Integer.toString(coarse) +
+                   " in " + Long.toString(System.currentTimeMillis() - t0) + "ms");
+
+        mReady = true;
+    }
+
+
+    /**
+     * Builds the coarse indices of a mesh. They are left null if they wouldn't save much
+     * @param mesh Mesh
+     */
+    private void decimate(PartMesh mesh) {
+
+        int nv = mesh.mNumVertices;
+
+        // Sort the vertices by cell, keeping vertex order within a cell
+
+        long[] keys = new long[nv];
+
+        for(int v=0; v<nv; v++) {
+
+            int node = mesh.mNodes.get(v);
+
+            long cx = getCell(mUndef.get(3*node),     mMinX);
+            long cy = getCell(mUndef.get(3*node + 1), mMinY);
+            long cz = getCell(mUndef.get(3*node + 2), mMinZ);
+
+            long cell = (((cx << CELL_BITS) | cy) << CELL_BITS) | cz;
+
+            keys[v] = (cell << VERTEX_BITS) | v;
+        }
+
+        Arrays.sort(keys);
+
+        // The first vertex of each cell stands in for the others
+
+        int[] rep = new int[nv];
+
+        long lastCell = -1;
+        int  first    = 0;
+
+        for(int i=0; i<nv; i++) {
+
+            long cell = keys[i] >>> VERTEX_BITS;
+            int  v    = (int)(keys[i] & ((1 << VERTEX_BITS) - 1));
+
+            if(cell != lastCell) {
+                lastCell = cell;
+                first    = v;
+            }
+
+            rep[v] = first;
+        }
+
+        // Remap the elements, dropping the ones that collapse. Indices are offset to the mesh's place in its batch
+
+        int base = mesh.mFirstVertex;
+
+        int per = mesh.mLines ? 2 : 3;
+
+        short[] indices = new short[mesh.mNumIndices];
+
+        int n = 0;
+
+        for(int i=0; i<mesh.mNumIndices; i+=per) {
+
+            int a = base + rep[(mesh.mIndices.get(i)     & 0xffff) - base];
+            int b = base + rep[(mesh.mIndices.get(i + 1) & 0xffff) - base];
+
+            if(a == b) continue;
+
+            if(per == 2) {
+                indices[n++] = (short)a;  indices[n++] = (short)b;
+                continue;
+            }
+
+            int c = base + rep[(mesh.mIndices.get(i + 2) & 0xffff) - base];
+
+            if(b == c || c == a) continue;
+
+            indices[n++] = (short)a;  indices[n++] = (short)b;  indices[n++] = (short)c;
+        }
+
+        // Parts smaller than a cell would vanish, so keep them whole
+
+        if(n == 0 || n > MAX_FRACTION * mesh.mNumIndices) return;
+
+        mesh.mLodIndices = ByteBuffer.allocateDirect(n * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
+        mesh.mLodIndices.put(indices, 0, n);
+        mesh.mLodIndices.position(0);
+
+        mesh.mNumLodIndices = n;
+    }
+
+
+    /**
+     * @param x Coordinate
+     * @param min Grid origin
+     * @return the cell <x> is in
+     */
+    private long getCell(float x, float min) {
+
+        int c = (int)((x - min) / mCellSize);
+
+        return Math.max(0, Math.min((1 << CELL_BITS) - 1, c));
+    }
+
+
+    /**
+     * @return true once the coarse meshes are all built
+     */
+    public boolean isReady() {
+        return mReady;
+    }
+
+
+    /**
+     * Stops building
+     */
+    public void shutdown() {
+        mStopped = true;
+    }
+}
@@ -10,6 +10,10 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -21,27 +25,6 @@ import javax.microedition.khronos.opengles.GL10;
 public class MyRenderer implements GLSurfaceView.Renderer
 {
 
-    static {
-        System.loadLibrary("myUtils");
-    }
-
-
-    /*
-    ** Native function to populate Vertex Data for a part - faster than doing it in Java
-    */
-    private native int populatePartVertexData(int numEls,
-                                             FloatBuffer undef,
-                                             FloatBuffer coords,
-                                             IntBuffer shTop,
-                                             int[] elsInPart,
-                                             FloatBuffer vertexData,
-                                             boolean SI,
-                                             int eswap);
-
-    private native int updateContourLimits(FloatBuffer undef, FloatBuffer coords, int len, int eswap);
-
-
-
     private final static String TAG = "RENDERER";
 
     private GLSurfaceView mGlSurfaceView;
@@ -67,9 +50,27 @@ public class MyRenderer implements GLSurfaceView.Renderer
     /** Stores a copy of the model matrix specifically for the light position. */
     private float[] mLightModelMatrix = new float[16];
 
-    /** Per-part vertex data */
+    /** Vertex data for the whole frame, one region per batch */
     private FloatBuffer mVertexData;
 
+    /** Each batch's region of the vertex data */
+    private FloatBuffer[] mBatchData;
+
+    /** Number of workers filling the vertex data */
+    private int mNumThreads = Parallel.getNumThreads();
+
+    /** Workers filling the vertex data */
+    private ExecutorService mPool = Executors.newFixedThreadPool(mNumThreads);
+
+    /** Fill the vertex data - native or Java, one per worker */
+    private VertexBuilder[] mBuilders = new VertexBuilder[mNumThreads];
+
+    /** Per-mesh bounds of the current state - min x, y, z then max x, y, z */
+    private FloatBuffer mBounds;
+
+    /** View volume, for culling meshes that are off screen */
+    private Frustum mFrustum = new Frustum();
+
     /** This will be used to pass in the transformation matrix. */
     private int mMVPMatrixHandle;
 
@@ -85,9 +86,30 @@ public class MyRenderer implements GLSurfaceView.Renderer
     /** This will be used to pass in model color information. */
     private int mColorHandle;
 
-    /** This will be used to pass in model normal information. */
+    /** This will be used to pass in undeformed position information. */
+    private int mUndefHandle;
+
+    /** This will be used to pass in nodal normal information. */
     private int mNormalHandle;
 
+    /** This will be used to pass in contour value information. */
+    private int mValueHandle;
+
+    /** This will be used to choose the shading - SHADE_NONE, SHADE_FLAT or SHADE_SMOOTH. */
+    private int mShadingHandle;
+
+    /** This will be used to turn contouring on and off. */
+    private int mContourHandle;
+
+    /** This will be used to pass in the contour bands per unit displacement or value. */
+    private int mContourScaleHandle;
+
+    /** This will be used to choose between contouring displacements and values. */
+    private int mContourValueHandle;
+
+    /** This will be used to pass in the contour colour texture unit. */
+    private int mContourTexHandle;
+
     /** How many bytes per float. */
     private static final int BYTES_PER_FLOAT = 4;
 
@@ -97,11 +119,52 @@ public class MyRenderer implements GLSurfaceView.Renderer
     /** Size of the normal data in elements. */
     private static final int NORMAL_DATA_SIZE = 3;
 
-    /** Size of the colour data in elements. */
-    private static final int COLOUR_DATA_SIZE = 3;
-
-    /** Vertices per shell */
-    private static final int VERTICES_PER_SHELL = 6;
+    /** Size of the contour value data in elements. */
+    private static final int VALUE_DATA_SIZE = 1;
+
+    /** What the vertex data is filled with */
+    private static final int FILL_POSITIONS = 0;
+    private static final int FILL_NORMALS   = 1;
+    private static final int FILL_VALUES    = 2;
+
+    /** Shading - unlit (lines), flat triangle normals or smooth nodal normals */
+    private static final float SHADE_NONE   = 0.0f;
+    private static final float SHADE_FLAT   = 1.0f;
+    private static final float SHADE_SMOOTH = 2.0f;
+
+    /** How many bytes per index. */
+    private static final int BYTES_PER_SHORT = 2;
+
+    /** Contour colours, lowest first. Looked up in the fragment shader from a texture */
+    private static final float[] CONTOUR_COLOURS = {
+        0.0f,    0.0f,    1.0f,
+        0.0f,    0.25f,   1.0f,
+        0.0f,    0.5f,    1.0f,
+        0.0f,    0.625f,  1.0f,
+        0.0f,    0.75f,   1.0f,
+        0.0f,    0.875f,  1.0f,
+        0.0f,    1.0f,    1.0f,
+        0.0f,    1.0f,    0.88f,
+        0.0f,    1.0f,    0.66f,
+        0.0f,    1.0f,    0.33f,
+        0.0f,    1.0f,    0.0f,
+        0.375f,  1.0f,    0.0f,
+        0.75f,   1.0f,    0.0f,
+        0.875f,  1.0f,    0.0f,
+        1.0f,    1.0f,    0.0f,
+        1.0f,    0.875f,  0.0f,
+        1.0f,    0.75f,   0.0f,
+        1.0f,    0.625f,  0.0f,
+        1.0f,    0.5f,    0.0f,
+        1.0f,    0.25f,   0.0f,
+        1.0f,    0.0f,    0.0f,
+        1.0f,    0.0f,    0.29f,
+        1.0f,    0.0f,    0.58f,
+        1.0f,    0.0f,    1.0f
+    };
+
+    /** Number of contour levels */
+    private static final int NUM_CONTOUR_LEVELS = CONTOUR_COLOURS.length / 3;
 
 
 
@@ -119,9 +182,30 @@ public class MyRenderer implements GLSurfaceView.Renderer
     /** This is a handle to our per-vertex shading program. */
     private int mPerVertexProgramHandle;
 
-    /** VBO handle per-part */
+    /** Vertex position VBO handle per-batch - streamed each state */
     private int[] mVBOHandle;
 
+    /** Undeformed position VBO handle per-batch - written once */
+    private int[] mUndefVBOHandle;
+
+    /** Part colour VBO handle per-batch - written once */
+    private int[] mColourVBOHandle;
+
+    /** Nodal normal VBO handle per-batch - only created for smooth shading */
+    private int[] mNormalVBOHandle;
+
+    /** Contour value VBO handle per-batch - only created for shell result plots */
+    private int[] mValueVBOHandle;
+
+    /** Index VBO handle per-batch */
+    private int[] mIBOHandle;
+
+    /** Coarse mesh index VBO handle per-batch */
+    private int[] mLodIBOHandle;
+
+    /** Contour colour texture handle */
+    private int mContourTexture;
+
     /** Model bounds */
     private float mModelMinX;
     private float mModelMaxX;
@@ -166,8 +250,11 @@ public class MyRenderer implements GLSurfaceView.Renderer
     private float mTx;
     private float mTy;
 
-    /** Number of vertex points*/
-    private int[] mNPoints;
+    /** Shared-vertex meshes for the parts, triangles first then lines */
+    private PartMesh[] mMeshes;
+
+    /** The meshes packed into a few sets of buffers */
+    private MeshBatch[] mBatches;
 
     /** Number of parts to render */
     private int mNParts;
@@ -181,6 +268,18 @@ public class MyRenderer implements GLSurfaceView.Renderer
      */
     private FloatBuffer mCoords;
 
+    /** Reads states ahead of playback */
+    private StatePrefetcher mPrefetcher;
+
+    /** Smooth nodal normals - only created for smooth shading */
+    private NodalNormals mNodalNormals;
+
+    /** Builds coarse meshes for drawing while the model is moving */
+    private MeshLod mLod;
+
+    /** Frame stage timings */
+    private FrameStats mStats = new FrameStats();
+
 	/* Set and get methods */
 
     public void  setTranX(float x) { mTx = x; }
@@ -193,6 +292,10 @@ public class MyRenderer implements GLSurfaceView.Renderer
 
     public float getModelDiag()    { return mModelDiag; }
 
+    public FrameStats getStats()   { return mStats; }
+
+    public String getVertexKernelName() { return mBuilders[0].getKernelName(); }
+
 
 
     /** Animating flag */
@@ -208,23 +311,145 @@ public class MyRenderer implements GLSurfaceView.Renderer
     private int currentFrame = 0;
 
     /** SI flag */
-    private boolean doSIPlot = false;
+    private volatile boolean doSIPlot = false;
+
+    /** Smooth shading flag */
+    private volatile boolean doSmooth = false;
+
+    /** Set when the normal VBOs hold normals for the current frame */
+    private boolean mSmoothed = false;
+
+    /** Set when the current frame needs updating without changing frame */
+    private volatile boolean mRefresh = false;
+
+    /** Set the smooth shading flag */
+    public void setSmooth(boolean status) {
+
+        doSmooth = status;
+
+        // Normals are only kept up to date while smooth shading, so update the frame
+        mRefresh = true;
+
+        mGlSurfaceView.requestRender();
+    }
+
+    /** Set while the model is being moved - draws the coarse meshes */
+    private volatile boolean mInteractive = false;
+
+    /**
+     * Set while a gesture is moving the model. The coarse meshes are drawn
+     * until it is cleared, then the full meshes are drawn again
+     */
+    public void setInteractive(boolean status) {
+
+        if(mInteractive == status) return;
+
+        mInteractive = status;
+
+        if(!status) mGlSurfaceView.requestRender();
+    }
+
+    /** Maximum contour value - NaN until it has been worked out */
+    private volatile float mContourMax = Float.NaN;
+
+    /** Limits of each contourable quantity over all states, worked out in the background */
+    private ContourLimits mLimits;
+
+    /** Shell result contoured - ShellResults.VON_MISES or PLASTIC_STRAIN, or -1 for displacements */
+    private volatile int mShellQuantity = -1;
+
+    /** Integration point the shell results are for, from 0 */
+    private volatile int mIntPoint = 0;
+
+    /** Shell results, only created for shell result plots */
+    private ShellResults mShellResults;
+
+    /** Set when the value VBOs hold shell results for the current frame */
+    private boolean mValued = false;
 
-    /** Set the SI plot flag */
+    /** Set the SI plot flag - contours displacements */
     public void setSI(boolean status) {
 
+        // Contouring is done in the shader, so only the limits are needed. They
+        // are those of the states read so far until the background pass is done
+        if(status) setContourMax(mLimits.getMax(ContourLimits.DISP_R));
+
+        if(status && mShellQuantity >= 0) {
+            mShellQuantity = -1;
+            mRefresh       = true;
+        }
+
         doSIPlot = status;
 
-        // Update the contour limits if we're going to do an SI plot - do in native code
-        if(doSIPlot) {
+        mGlSurfaceView.requestRender();
+    }
 
-            //Node.getUndefCoords().rewind();
-            mCoords = mFam.getStateFromID( mFam.getNumOfStates() - 1).getStateCoords();
 
-            updateContourLimits(Node.getUndefCoords(), mCoords, Node.getNum(), mFam.getEswap());
+    /**
+     * Contours a shell result. The values are averaged at the nodes, and the
+     * contour range is that of the shells in the state drawn
+     * @param quantity ShellResults.VON_MISES or ShellResults.PLASTIC_STRAIN
+     */
+    public void setShellPlot(int quantity) {
 
-        }
+        mShellQuantity = quantity;
+
+        doSIPlot = true;
+
+        // The values are worked out when the frame is updated
+        mRefresh = true;
+
+        mGlSurfaceView.requestRender();
+    }
+
+
+    /**
+     * @return the shell result contoured - ShellResults.VON_MISES or PLASTIC_STRAIN, or -1 for displacements
+     */
+    public int getShellPlot() {
+        return mShellQuantity;
+    }
+
+
+    /**
+     * Chooses the integration point the shell results are for
+     * @param ip Integration point, from 0
+     */
+    public void setIntPoint(int ip) {
+
+        mIntPoint = Math.max(0, Math.min(ip, mFam.getNumIntPoints() - 1));
+
+        mRefresh = true;
+
+        mGlSurfaceView.requestRender();
+    }
+
+
+    /**
+     * @return the integration point the shell results are for, from 0
+     */
+    public int getIntPoint() {
+        return mIntPoint;
+    }
+
+
+    /**
+     * @return the number of integration points through the thickness of the shells
+     */
+    public int getNumIntPoints() {
+        return mFam.getNumIntPoints();
+    }
+
+
+    /**
+     * Sets the top of the contour range. Nothing is rebuilt - it is passed to the shader
+     * @param max Maximum contour value
+     */
+    public void setContourMax(float max) {
+
+        mContourMax = max;
 
+        mGlSurfaceView.requestRender();
     }
 
 
@@ -238,9 +463,12 @@ public class MyRenderer implements GLSurfaceView.Renderer
 
         if(isAnimating)
             mGlSurfaceView.setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
-        else
+        else {
             mGlSurfaceView.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
 
+            mFam.getStateCache().logStats();
+        }
+
         return isAnimating;
     }
 
@@ -276,6 +504,8 @@ public class MyRenderer implements GLSurfaceView.Renderer
     {
         this.context = context;                         // Save Specified Context
 
+        for(int i=0; i<mNumThreads; i++) mBuilders[i] = new VertexBuilder();
+
         mGlSurfaceView = glSurfaceView;
 
 
@@ -286,6 +516,18 @@ public class MyRenderer implements GLSurfaceView.Renderer
 
         mNParts = mFam.getNumParts();
 
+        // Start reading states in the background
+
+        mPrefetcher = new StatePrefetcher(mFam);
+
+        // Contour limits over all states, from the last time if the family hasn't changed
+
+        mLimits = new ContourLimits(mFam, new ContourLimits.Listener() {
+            public void onLimitsReady(ContourLimits limits) {
+                if(doSIPlot && mShellQuantity < 0) setContourMax(limits.getMax(ContourLimits.DISP_R));
+            }
+        });
+
         // Get extensions - could check for GL_OES_vertex_half_float (16 bit)
         //                  could be used for normals, coords(?) to reduce memory
 
@@ -316,7 +558,7 @@ public class MyRenderer implements GLSurfaceView.Renderer
         final int fragmentShaderHandle = compileShader(GLES20.GL_FRAGMENT_SHADER, fragmentShader);
 
         mPerVertexProgramHandle = createAndLinkProgram(vertexShaderHandle, fragmentShaderHandle,
-                new String[] {"a_Position",  "a_Color", "a_Normal"});
+                new String[] {"a_Position",  "a_Color",  "a_Undef",  "a_Normal"});
 
         // Initialise data here, rather than in constructor so that it's not done on
         // the UI thread
@@ -327,6 +569,9 @@ public class MyRenderer implements GLSurfaceView.Renderer
         // Initialise VBOs
         initialiseVBOs();
 
+        // Contour colour lookup
+        initialiseContourTexture();
+
 
         // Get model bounds
 
@@ -383,6 +628,18 @@ public class MyRenderer implements GLSurfaceView.Renderer
         mScaleFactor = 1.0f;
 
 
+        // Start building the coarse meshes
+        if(mLod != null) mLod.shutdown();
+
+        mLodIBOHandle = null;
+
+        // Buffers from a lost context are gone - the normal and value VBOs are made again when next needed
+        mNormalVBOHandle = null;
+        mValueVBOHandle  = null;
+
+        mLod = new MeshLod(mMeshes, mBatches, Node.getUndefCoords(), modelBounds, mModelDiag);
+
+
         // Update geometry to frame 0
         updateFrame(0);
     }
@@ -413,26 +670,35 @@ public class MyRenderer implements GLSurfaceView.Renderer
     @Override
     public void onDrawFrame(GL10 glUnused)
     {
-        long start = System.currentTimeMillis();
+        mStats.begin(FrameStats.FRAME);
 
 
         // Animate or go to next state
 
         if (isAnimating || prevState || nextState) {
 
-            if(prevState)
-              currentFrame--;
-            else
-              currentFrame++;
+            int step = prevState ? -1 : 1;
+
+            int frame = wrapFrame(currentFrame + step);
+
+            // When playing, don't wait for the disk. If the next state isn't
+            // loaded yet skip ahead to one that is, or hold this frame
+
+            if(isAnimating && !prevState && !nextState && !mPrefetcher.isLoaded(frame)) {
 
-            if ( currentFrame >= mFam.getNumOfStates()) {
-                currentFrame = 0;
+                int ready = mPrefetcher.nextLoaded(frame, step);
+
+                frame = ready >= 0 ? ready : currentFrame;
             }
 
-            if(currentFrame < 0)
-                currentFrame = mFam.getNumOfStates();
+            // Tell the prefetcher before getting the coordinates so it keeps them
 
-            updateFrame( currentFrame);
+            mPrefetcher.request(frame, step);
+
+            if(frame != currentFrame) {
+                currentFrame = frame;
+                mRefresh     = true;
+            }
 
             if(nextState || prevState) {
                 prevState = false;
@@ -441,6 +707,12 @@ public class MyRenderer implements GLSurfaceView.Renderer
             }
         }
 
+        // Update the geometry if the frame or the shading mode has changed
+
+        if(mRefresh) {
+            mRefresh = false;
+            updateFrame( currentFrame);
+        }
 
 
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
@@ -455,7 +727,16 @@ public class MyRenderer implements GLSurfaceView.Renderer
 
         mPositionHandle  = GLES20.glGetAttribLocation(mPerVertexProgramHandle,  "a_Position");
         mColorHandle     = GLES20.glGetAttribLocation(mPerVertexProgramHandle,  "a_Color");
+        mUndefHandle     = GLES20.glGetAttribLocation(mPerVertexProgramHandle,  "a_Undef");
         mNormalHandle    = GLES20.glGetAttribLocation(mPerVertexProgramHandle,  "a_Normal");
+        mValueHandle     = GLES20.glGetAttribLocation(mPerVertexProgramHandle,  "a_Value");
+
+        mShadingHandle      = GLES20.glGetUniformLocation(mPerVertexProgramHandle, "u_Shading");
+
+        mContourHandle      = GLES20.glGetUniformLocation(mPerVertexProgramHandle, "u_Contour");
+        mContourScaleHandle = GLES20.glGetUniformLocation(mPerVertexProgramHandle, "u_ContourScale");
+        mContourValueHandle = GLES20.glGetUniformLocation(mPerVertexProgramHandle, "u_ContourValue");
+        mContourTexHandle   = GLES20.glGetUniformLocation(mPerVertexProgramHandle, "u_ContourTex");
 
         // Rotate ModelView matrix
 
@@ -501,12 +782,46 @@ public class MyRenderer implements GLSurfaceView.Renderer
 
         // Draw Parts
 
+        mStats.begin(FrameStats.DRAW);
+
         drawParts();
 
+        mStats.end(FrameStats.DRAW);
+
+
+        mStats.end(FrameStats.FRAME);
+
+        mStats.endFrame();
+    }
+
+
+    /**
+     * @param frame Frame number
+     * @return <frame> wrapped into the range of frames
+     */
+    private int wrapFrame(int frame)
+    {
+        if(frame > mFam.getNumOfStates()) frame = 0;
+        if(frame < 0)                     frame = mFam.getNumOfStates();
+
+        return frame;
+    }
+
+
+    /**
+     * Stops background work. Call when the renderer is no longer needed
+     */
+    public void release()
+    {
+        mPrefetcher.shutdown();
 
-        long time = System.currentTimeMillis() - start;
+        mPool.shutdown();
 
-        // Log.d(TAG, "Frame time " + Long.toString(time) + "mS");
+        mLimits.shutdown();
+
+        if(mLod != null) mLod.shutdown();
+
+        mFam.getStateCache().logStats();
     }
 
 
@@ -515,60 +830,176 @@ public class MyRenderer implements GLSurfaceView.Renderer
      */
     private void initialiseVertexData()
     {
-        mNPoints = new int[mNParts];
+        // Build the shared-vertex meshes for each part - solid and thick shell
+        // parts are drawn from their exterior faces and beam parts as lines
 
-        int sizeCoords, sizeNormal, sizeColour;
+        ArrayList<PartMesh> meshes = new ArrayList<PartMesh>();
 
-        int sizeVertexData  = 0;
+        int[] local = new int[Node.getNum()];
+        Arrays.fill(local, -1);
 
         for(int i=0; i<mNParts; i++) {
 
-            mNPoints[i] = Part.getNumElsInPart(i) * VERTICES_PER_SHELL;
-            sizeCoords = mNPoints[i] * POSITION_DATA_SIZE;
-            sizeNormal = mNPoints[i] * NORMAL_DATA_SIZE;
-            sizeColour = mNPoints[i] * COLOUR_DATA_SIZE;
+            switch(Part.getType(i)) {
+
+                case Element.SHELL: { meshes.addAll(PartMesh.createPartMeshes(i, Shell.getTop(), Part.getElsInPart(i), local));  break; }
+                case Element.SOLID:
+                case Element.TSHELL: { meshes.addAll(PartMesh.createFaceMeshes(i, SolidSkin.getFaces(i), SolidSkin.getNumFaces(i), local));  break; }
+                case Element.BEAM:  { meshes.addAll(PartMesh.createLineMeshes(i, Beam.getTop(), Part.getElsInPart(i), local));  break; }
+            }
+        }
+
+        // Triangles first, then lines, so they go in separate batches
+
+        mMeshes = new PartMesh[meshes.size()];
+
+        int n = 0;
+
+        for(int i=0; i<meshes.size(); i++) if(!meshes.get(i).mLines) mMeshes[n++] = meshes.get(i);
+        for(int i=0; i<meshes.size(); i++) if( meshes.get(i).mLines) mMeshes[n++] = meshes.get(i);
+
+        // Pack the meshes into as few sets of buffers as will fit
+
+        mBatches = MeshBatch.createBatches(mMeshes);
+
+        Log.d(TAG, Integer.toString(mMeshes.length) + " meshes in " + Integer.toString(mBatches.length) + " batches");
+
+        // Vertex data for every batch, so the batches can be filled at the same time
+
+        int numVertices = 0;
+
+        for(int i=0; i<mBatches.length; i++) numVertices += mBatches[i].mNumVertices;
+
+        mVertexData = ByteBuffer.allocateDirect(Math.max(1, numVertices) * POSITION_DATA_SIZE * BYTES_PER_FLOAT).order(ByteOrder.nativeOrder()).asFloatBuffer();
+
+        mBatchData = new FloatBuffer[mBatches.length];
+
+        int base = 0;
+
+        for(int i=0; i<mBatches.length; i++) {
+
+            mVertexData.position(POSITION_DATA_SIZE * base);
+            mBatchData[i] = mVertexData.slice();
+            mBatchData[i].limit(POSITION_DATA_SIZE * mBatches[i].mNumVertices);
 
-            sizeVertexData  = Math.max(sizeVertexData, sizeCoords + sizeNormal + sizeColour);
+            base += mBatches[i].mNumVertices;
         }
 
-        mVertexData = ByteBuffer.allocateDirect(sizeVertexData * BYTES_PER_FLOAT).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        mVertexData.position(0);
+
+        mBounds = ByteBuffer.allocateDirect(Math.max(1, mMeshes.length) * Frustum.L_BOUNDS * BYTES_PER_FLOAT).order(ByteOrder.nativeOrder()).asFloatBuffer();
     }
 
 
 
 
     /**
-     * Initialise VBO handles for parts
+     * Initialise VBO handles for batches
      */
     private void initialiseVBOs()
     {
-// For each part set up a VBO of the correct size, and initialise it to NULL
+// For each batch set up separate streams - positions, which change every state, and
+// undeformed positions, part colours and indices, which never change. The shader
+// contours from the difference between the positions and the undeformed positions
+
+// Get buffers and allocate arrays for VBO handles
+
+        int nBatches = mBatches.length;
 
-// Get buffers and allocate array for VBO handles 
+        final int buffer[] = new int[4 * nBatches];
+        GLES20.glGenBuffers(4 * nBatches, buffer, 0);
 
-        final int buffer[] = new int[mNParts];
-        GLES20.glGenBuffers(mNParts, buffer, 0);
+        mVBOHandle       = new int[nBatches];
+        mUndefVBOHandle  = new int[nBatches];
+        mColourVBOHandle = new int[nBatches];
+        mIBOHandle       = new int[nBatches];
 
-        mVBOHandle = new int[mNParts];
+// Loop over each batch and initialise VBOs
 
-// Loop over each part and initialise VBO
+         for(int i=0; i<nBatches; i++) {
 
-         for(int i=0; i<mNParts; i++) {
+            MeshBatch batch = mBatches[i];
 
-            int points = Part.getNumElsInPart(i) * VERTICES_PER_SHELL;
+            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffer[4*i]);
+            GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, batch.mNumVertices * POSITION_DATA_SIZE * BYTES_PER_FLOAT, null, GLES20.GL_DYNAMIC_DRAW);
 
-            int sizeVertexData = points * (POSITION_DATA_SIZE +
-                                           NORMAL_DATA_SIZE   +
-                                           COLOUR_DATA_SIZE);
+            mBuilders[0].populate(batch.mNumVertices, Node.getUndefCoords(), batch.mNodes, mBatchData[i]);
 
-            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffer[i]);
-            GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, sizeVertexData * BYTES_PER_FLOAT, null, GLES20.GL_DYNAMIC_DRAW);
+            mBatchData[i].position(0);
+            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffer[4*i+1]);
+            GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, batch.mNumVertices * POSITION_DATA_SIZE * BYTES_PER_FLOAT, mBatchData[i], GLES20.GL_STATIC_DRAW);
 
-            // Store handle for this part
-            mVBOHandle[i] = buffer[i];
+            batch.mColours.position(0);
+            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffer[4*i+2]);
+            GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, batch.mNumVertices * MeshBatch.COLOUR_DATA_SIZE, batch.mColours, GLES20.GL_STATIC_DRAW);
+
+            batch.mIndices.position(0);
+            GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, buffer[4*i+3]);
+            GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, batch.mNumIndices * BYTES_PER_SHORT, batch.mIndices, GLES20.GL_STATIC_DRAW);
+
+            // Store handles for this batch
+            mVBOHandle[i]       = buffer[4*i];
+            mUndefVBOHandle[i]  = buffer[4*i+1];
+            mColourVBOHandle[i] = buffer[4*i+2];
+            mIBOHandle[i]       = buffer[4*i+3];
         }
 
         GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+    }
+
+
+    /**
+     * Initialise the coarse mesh index VBOs, once they have been built
+     */
+    private void initialiseLodIBOs()
+    {
+        int nBatches = mBatches.length;
+
+        mLodIBOHandle = new int[nBatches];
+        GLES20.glGenBuffers(nBatches, mLodIBOHandle, 0);
+
+        for(int i=0; i<nBatches; i++) {
+
+            MeshBatch batch = mBatches[i];
+
+            batch.mLodIndices.position(0);
+            GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mLodIBOHandle[i]);
+            GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, batch.mNumLodIndices * BYTES_PER_SHORT, batch.mLodIndices, GLES20.GL_STATIC_DRAW);
+        }
+
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+    }
+
+
+    /**
+     * Initialise the contour colour texture - one texel per contour level
+     */
+    private void initialiseContourTexture()
+    {
+        ByteBuffer texels = ByteBuffer.allocateDirect(CONTOUR_COLOURS.length);
+
+        for(int i=0; i<CONTOUR_COLOURS.length; i++) {
+            texels.put((byte)Math.round(255.0f * CONTOUR_COLOURS[i]));
+        }
+
+        texels.position(0);
+
+        final int texture[] = new int[1];
+        GLES20.glGenTextures(1, texture, 0);
+
+        mContourTexture = texture[0];
+
+        // Nearest filtering so each band is a single colour
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mContourTexture);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGB, NUM_CONTOUR_LEVELS, 1, 0, GLES20.GL_RGB, GLES20.GL_UNSIGNED_BYTE, texels);
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
     }
 
 
@@ -581,9 +1012,6 @@ public class MyRenderer implements GLSurfaceView.Renderer
     public void updateFrame(int istate) {
 
         // Update of vertex coordinates with current state data
-        // TODO - currently only renders SHELLs
-
-        int sizeVertexData ;
 
 
         if(istate == 0) {
@@ -591,48 +1019,291 @@ public class MyRenderer implements GLSurfaceView.Renderer
 
             mCoords = Node.getUndefCoords();
         }
-        else
+        else {
+            // From the state cache if the prefetcher has read it, otherwise read now
+
+            mStats.begin(FrameStats.STATE_IO);
+
             mCoords = mFam.getStateFromID(istate).getStateCoords();
 
+            mStats.end(FrameStats.STATE_IO);
+        }
+
+        if(mCoords == null) return;
+
+// Populate vertex positions and the box around each mesh, for culling - the
+// batches are shared out between the workers, each filling its own regions
+
+        mStats.begin(FrameStats.POPULATE);
+
+        populateBatches(mCoords, FILL_POSITIONS);
+
+        mStats.end(FrameStats.POPULATE);
+
+// Now update the position VBOs. Only this needs the GL thread
+
+        mStats.begin(FrameStats.UPLOAD);
+
+        for(int i=0; i<mBatches.length; i++) {
+            updateVBO(mVBOHandle[i], mBatchData[i], mBatches[i].mNumVertices * POSITION_DATA_SIZE);
+        }
+
+        mStats.end(FrameStats.UPLOAD);
+
+// Nodal normals are only needed for smooth shading
+
+        mSmoothed = doSmooth && updateNormals();
+
+// Shell results are only needed while they are contoured. The undeformed
+// state has none
+
+        mValued = doSIPlot && mShellQuantity >= 0 && istate > 0 && updateValues(istate);
+    }
+
+
+    /**
+     * Update the normal VBOs from the nodal normals of the current coordinates,
+     * setting them up the first time and after the context is lost
+     * @return true if the normals were updated
+     */
+    private boolean updateNormals() {
+
+        if(mNodalNormals == null) mNodalNormals = createNodalNormals();
+
+        if(mNormalVBOHandle == null) {
+
+            int nBatches = mBatches.length;
+
+            mNormalVBOHandle = new int[nBatches];
+            GLES20.glGenBuffers(nBatches, mNormalVBOHandle, 0);
+
+            for(int i=0; i<nBatches; i++) {
+
+                // Lines aren't lit
+                if(mBatches[i].mLines) continue;
+
+                GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mNormalVBOHandle[i]);
+                GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mBatches[i].mNumVertices * NORMAL_DATA_SIZE * BYTES_PER_FLOAT, null, GLES20.GL_DYNAMIC_DRAW);
+            }
+
+            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        }
+
+        mStats.begin(FrameStats.POPULATE);
+
+        FloatBuffer normals = mNodalNormals.update(mCoords);
+
+// One normal per node, so the vertex normals are gathered just like the positions
+
+        populateBatches(normals, FILL_NORMALS);
+
+        mStats.end(FrameStats.POPULATE);
+
+        mStats.begin(FrameStats.UPLOAD);
+
+        for(int i=0; i<mBatches.length; i++) {
+
+            // Lines aren't lit
+            if(mBatches[i].mLines) continue;
+
+            updateVBO(mNormalVBOHandle[i], mBatchData[i], mBatches[i].mNumVertices * NORMAL_DATA_SIZE);
+        }
+
+        mStats.end(FrameStats.UPLOAD);
+
+        return true;
+    }
+
+
+    /**
+     * Update the value VBOs from the shell results of a state at the chosen
+     * integration point, setting them up the first time and after the context
+     * is lost. The contour range is set from the shells of the state
+     * @param istate State number
+     * @return true if the values were updated
+     */
+    private boolean updateValues(int istate) {
+
+        if(mShellResults == null) mShellResults = new ShellResults(mFam, mPool, mNumThreads);
+
+        if(mValueVBOHandle == null) {
+
+            int nBatches = mBatches.length;
+
+            mValueVBOHandle = new int[nBatches];
+            GLES20.glGenBuffers(nBatches, mValueVBOHandle, 0);
+
+            for(int i=0; i<nBatches; i++) {
+
+                GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mValueVBOHandle[i]);
+                GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mBatches[i].mNumVertices * VALUE_DATA_SIZE * BYTES_PER_FLOAT, null, GLES20.GL_DYNAMIC_DRAW);
+            }
+
+            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        }
+
+        mStats.begin(FrameStats.STATE_IO);
+
+        FloatBuffer values = mShellResults.update(mFam.getStateFromID(istate), mShellQuantity, mIntPoint);
+
+        mStats.end(FrameStats.STATE_IO);
+
+        if(values == null) return false;
+
+        mContourMax = mShellResults.getMax();
+
+// One value per node, gathered like the positions
+
+        mStats.begin(FrameStats.POPULATE);
+
+        populateBatches(values, FILL_VALUES);
+
+        mStats.end(FrameStats.POPULATE);
+
+        mStats.begin(FrameStats.UPLOAD);
+
+        for(int i=0; i<mBatches.length; i++) {
+            updateVBO(mValueVBOHandle[i], mBatchData[i], mBatches[i].mNumVertices * VALUE_DATA_SIZE);
+        }
+
+        mStats.end(FrameStats.UPLOAD);
+
+        return true;
+    }
+
+
+    /**
+     * Fills every batch's vertex data from nodal values, in parallel. Each
+     * worker does a share of the batches with its own VertexBuilder
+     * @param values Nodal values - three per node for coordinates or normals, one for contour values
+     * @param fill FILL_POSITIONS, FILL_NORMALS or FILL_VALUES. For positions the mesh boxes
+     *             are updated too, and line batches have no normals
+     */
+    private void populateBatches(final FloatBuffer values, final int fill) {
+
+        final int nbatches = mBatches.length;
+
+        Parallel.run(mPool, mNumThreads, mNumThreads, new Parallel.RangeTask() {
+            public void run(int first, int last) {
+
+                for(int c=first; c<last; c++) {
+
+                    VertexBuilder builder = mBuilders[c];
+
+                    int i1 = (int)((long)nbatches * (c + 1) / mNumThreads);
+
+                    for(int i=(int)((long)nbatches * c / mNumThreads); i<i1; i++) {
+
+                        MeshBatch batch = mBatches[i];
+
+                        if(fill == FILL_NORMALS && batch.mLines) continue;
+
+                        if(fill == FILL_VALUES) {
+                            builder.populateValues(batch.mNumVertices, values, batch.mNodes, mBatchData[i]);
+                            continue;
+                        }
+
+                        builder.populate(batch.mNumVertices, values, batch.mNodes, mBatchData[i]);
+
+                        if(fill != FILL_POSITIONS) continue;
+
+                        for(int j=0; j<batch.mMeshes.length; j++) {
+
+                            PartMesh mesh = batch.mMeshes[j];
+
+                            builder.getBounds(mesh.mFirstVertex, mesh.mNumVertices, mBatchData[i], mBounds, (batch.mFirstMesh + j) * Frustum.L_BOUNDS);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+
+    /**
+     * Chooses the kernel that fills the vertex data, and redraws
+     * @param kernel VertexBuilder.NATIVE or VertexBuilder.JAVA
+     */
+    public void setVertexKernel(int kernel) {
+
+        for(int i=0; i<mNumThreads; i++) mBuilders[i].setKernel(kernel);
+
+        Log.d(TAG, "Building vertices with the " + getVertexKernelName() + " kernel");
+
+        mRefresh = true;
+
+        mGlSurfaceView.requestRender();
+    }
+
+
+    /**
+     * @return the kernel that fills the vertex data - VertexBuilder.NATIVE or VertexBuilder.JAVA
+     */
+    public int getVertexKernel() {
+        return mBuilders[0].getKernel();
+    }
+
+
+    /**
+     * @return nodal normals for the quads that are drawn - shells and solid and thick shell exterior faces
+     */
+    private NodalNormals createNodalNormals() {
+
+        int nfaces = 0;
 
         for(int i=0; i<mNParts; i++) {
 
-            if(Part.getType(i) != Element.SHELL) continue;  // TODO - only renders shells
+            switch(Part.getType(i)) {
 
-            sizeVertexData  = mNPoints[i] * (POSITION_DATA_SIZE +
-                                             NORMAL_DATA_SIZE +
-                                             COLOUR_DATA_SIZE) ;
+                case Element.SHELL: { nfaces += Part.getNumElsInPart(i);   break; }
+                case Element.SOLID:
+                case Element.TSHELL: { nfaces += SolidSkin.getNumFaces(i);  break; }
+            }
+        }
 
-// Call native function to populate vertex data
+        IntBuffer faces = ByteBuffer.allocateDirect(Math.max(1, nfaces) * NodalNormals.NODES_PER_FACE * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
 
-            populatePartVertexData( Part.getNumElsInPart(i),
-                                    Node.getUndefCoords(),
-                                    mCoords,
-                                    Shell.getTop(),
-                                    Part.getElsInPart(i),
-                                    mVertexData,
-                                    doSIPlot,
-                                    mFam.getEswap());
+        IntBuffer top = Shell.getTop();
 
-// Now update VBO for this part
-            updateVBO(i, sizeVertexData);
+        for(int i=0; i<mNParts; i++) {
+
+            switch(Part.getType(i)) {
+
+                case Element.SHELL: {
+
+                    IntBuffer els = Part.getElsInPart(i);
+
+                    for(int j=0; j<els.limit(); j++) {
+                        for(int k=0; k<NodalNormals.NODES_PER_FACE; k++) faces.put(top.get(k + Shell.L_TOP * els.get(j)));
+                    }
+
+                    break;
+                }
+
+                case Element.SOLID:
+                case Element.TSHELL: { faces.put(SolidSkin.getFaces(i));  break; }
+            }
         }
+
+        faces.position(0);
+
+        return new NodalNormals(Node.getNum(), faces, nfaces, mPool, mNumThreads);
     }
 
 
     /**
-     * Update VBO data for internal part <i>
+     * Update VBO <handle> from <data>
      */
 
-    private void updateVBO(int ipart, int sizeVertex)
+    private void updateVBO(int handle, FloatBuffer data, int size)
     {
         // Update GPU from client-side buffers and then release them
 
-        if(mVBOHandle[ipart] != 0) {
+        if(handle != 0) {
 
-            mVertexData.position(0);
-            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVBOHandle[ipart]);
-            GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, sizeVertex * BYTES_PER_FLOAT,  mVertexData);
+            data.position(0);
+            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, handle);
+            GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, size * BYTES_PER_FLOAT,  data);
 
             //GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
         }
@@ -655,34 +1326,126 @@ public class MyRenderer implements GLSurfaceView.Renderer
         // Pass in the light position in eye space.        
         GLES20.glUniform3f(mLightPosHandle, mLightPosInEyeSpace[0], mLightPosInEyeSpace[1], mLightPosInEyeSpace[2]);
 
+        // Contouring - colour bands per unit displacement, or per unit of a shell
+        // result. All one band if there's no displacement. Shell results are
+        // only contoured once the frame has them
+        float max = mContourMax;
 
-        // Render by part
+        boolean values  = mShellQuantity >= 0;
+        boolean contour = doSIPlot && !Float.isNaN(max) && (!values || mValued);
 
-        final int stride = (POSITION_DATA_SIZE + NORMAL_DATA_SIZE + COLOUR_DATA_SIZE) * BYTES_PER_FLOAT;
+        GLES20.glUniform1f(mContourHandle, contour ? 1.0f : 0.0f);
+        GLES20.glUniform1f(mContourScaleHandle, max > 0.0f ? (NUM_CONTOUR_LEVELS - 1) / max : 0.0f);
+        GLES20.glUniform1f(mContourValueHandle, values ? 1.0f : 0.0f);
 
-        for(int i=0; i<mNParts; i++) {
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mContourTexture);
+        GLES20.glUniform1i(mContourTexHandle, 0);
 
-            // Bind the vertex data buffer
-            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVBOHandle[i]);
+        // View volume for culling
+        mFrustum.update(mMVPMatrix);
+
+        // Coarse meshes while the model is moving, once they are ready
+        if(mLodIBOHandle == null && mLod.isReady()) initialiseLodIBOs();
+
+        boolean coarse = mInteractive && mLodIBOHandle != null;
+
+
+        // Render by batch
+
+        for(int i=0; i<mBatches.length; i++) {
 
-            // Pass in the position information - from VBO
+            MeshBatch batch = mBatches[i];
+
+            // Pass in the position information - from position VBO
+            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVBOHandle[i]);
             GLES20.glEnableVertexAttribArray(mPositionHandle);
-            GLES20.glVertexAttribPointer(mPositionHandle, POSITION_DATA_SIZE, GLES20.GL_FLOAT, false, stride, 0);
+            GLES20.glVertexAttribPointer(mPositionHandle, POSITION_DATA_SIZE, GLES20.GL_FLOAT, false, 0, 0);
+
+            if(contour && values) {
+
+                // Pass in the contour values - from value VBO
+                GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mValueVBOHandle[i]);
+                GLES20.glEnableVertexAttribArray(mValueHandle);
+                GLES20.glVertexAttribPointer(mValueHandle, VALUE_DATA_SIZE, GLES20.GL_FLOAT, false, 0, 0);
+
+                GLES20.glDisableVertexAttribArray(mUndefHandle);
+                GLES20.glDisableVertexAttribArray(mColorHandle);
+            }
+            else if(contour) {
+
+                // Pass in the undeformed positions - from undeformed VBO
+                GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mUndefVBOHandle[i]);
+                GLES20.glEnableVertexAttribArray(mUndefHandle);
+                GLES20.glVertexAttribPointer(mUndefHandle, POSITION_DATA_SIZE, GLES20.GL_FLOAT, false, 0, 0);
+
+                GLES20.glDisableVertexAttribArray(mValueHandle);
+                GLES20.glDisableVertexAttribArray(mColorHandle);
+            }
+            else {
+
+                // Pass in the part colours - from colour VBO
+                GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mColourVBOHandle[i]);
+                GLES20.glEnableVertexAttribArray(mColorHandle);
+                GLES20.glVertexAttribPointer(mColorHandle, MeshBatch.COLOUR_DATA_SIZE, GLES20.GL_UNSIGNED_BYTE, true, 0, 0);
+
+                GLES20.glDisableVertexAttribArray(mUndefHandle);
+                GLES20.glDisableVertexAttribArray(mValueHandle);
+            }
+
+            // Shading - lines are unlit. Smooth shading takes normals from the normal
+            // VBOs rather than the triangles
+
+            boolean smooth = mSmoothed && !batch.mLines;
+
+            GLES20.glUniform1f(mShadingHandle, batch.mLines ? SHADE_NONE : (smooth ? SHADE_SMOOTH : SHADE_FLAT));
+
+            if(smooth) {
+
+                // Pass in the nodal normals - from normal VBO
+                GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mNormalVBOHandle[i]);
+                GLES20.glEnableVertexAttribArray(mNormalHandle);
+                GLES20.glVertexAttribPointer(mNormalHandle, NORMAL_DATA_SIZE, GLES20.GL_FLOAT, false, 0, 0);
+            }
+            else {
+                GLES20.glDisableVertexAttribArray(mNormalHandle);
+            }
+
+            // Draw the elements from the index buffer - one call for each run of
+            // meshes that are on screen
+
+            int mode = batch.mLines ? GLES20.GL_LINES : GLES20.GL_TRIANGLES;
+
+            GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, coarse ? mLodIBOHandle[i] : mIBOHandle[i]);
+
+            int first = 0, count = 0;
 
-            // Pass in the normal information - from VBO
-            GLES20.glEnableVertexAttribArray(mNormalHandle);
-            GLES20.glVertexAttribPointer(mNormalHandle, NORMAL_DATA_SIZE, GLES20.GL_FLOAT, false, stride, (POSITION_DATA_SIZE) * BYTES_PER_FLOAT);
+            for(int j=0; j<batch.mMeshes.length; j++) {
 
-            // Pass in the colour information - from VBO
-            GLES20.glEnableVertexAttribArray(mColorHandle);
-            GLES20.glVertexAttribPointer(mColorHandle, COLOUR_DATA_SIZE, GLES20.GL_FLOAT, false, stride, (POSITION_DATA_SIZE + NORMAL_DATA_SIZE) * BYTES_PER_FLOAT);
+                PartMesh mesh = batch.mMeshes[j];
 
-            // Draw the shells.
+                int meshFirst = coarse ? batch.mLodFirst[j] : mesh.mFirstIndex;
+                int meshCount = coarse ? batch.mLodCount[j] : mesh.mNumIndices;
+
+                // Skip meshes that are entirely off screen
+                boolean visible = mFrustum.isVisible(mBounds, (batch.mFirstMesh + j) * Frustum.L_BOUNDS);
+
+                if(visible && count > 0 && first + count == meshFirst) {
+                    count += meshCount;
+                    continue;
+                }
+
+                if(count > 0) GLES20.glDrawElements(mode, count, GLES20.GL_UNSIGNED_SHORT, first * BYTES_PER_SHORT);
+
+                first = meshFirst;
+                count = visible ? meshCount : 0;
+            }
 
-            GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, mNPoints[i]);
+            if(count > 0) GLES20.glDrawElements(mode, count, GLES20.GL_UNSIGNED_SHORT, first * BYTES_PER_SHORT);
 
-            // Clear the currently bound buffer (so future OpenGL calls do not use this buffer).
+            // Clear the currently bound buffers (so future OpenGL calls do not use them).
             GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+            GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
         }
     }
 
@@ -691,33 +1454,31 @@ public class MyRenderer implements GLSurfaceView.Renderer
     {
         return "uniform mat4 u_MVPMatrix;      \n"		// A constant representing the combined model/view/projection matrix.
                + "uniform mat4 u_MVMatrix;       \n"		// A constant representing the combined model/view matrix.
-               + "uniform vec3 u_LightPos;       \n"	    // The position of the light in eye space.
 
                + "attribute vec4 a_Position;     \n"		// Per-vertex position information we will pass in.
                + "attribute vec4 a_Color;        \n"		// Per-vertex color information we will pass in.
-               + "attribute vec3 a_Normal;       \n"		// Per-vertex normal information we will pass in.
+               + "attribute vec3 a_Undef;        \n"		// Per-vertex undeformed position, for contouring.
+               + "attribute vec3 a_Normal;       \n"		// Per-vertex nodal normal, for smooth shading.
+               + "attribute float a_Value;       \n"		// Per-vertex contour value, negative if there is none.
 
-               + "varying vec4 v_Color;          \n"		// This will be passed into the fragment shader.
+               + "uniform float u_ContourScale;  \n"		// Contour bands per unit displacement or value.
+               + "uniform float u_ContourValue;  \n"		// 1.0 to contour a_Value, 0.0 for displacements.
 
-               + "const float ambient    = 0.3;  \n"
-               + "const float brightness = 0.7;  \n"
+               + "varying vec3 v_Position;       \n"		// Eye space position, passed into the fragment shader.
+               + "varying vec4 v_Color;          \n"		// This will be passed into the fragment shader.
+               + "varying float v_Contour;       \n"		// Contoured quantity in contour bands, negative if there is none.
+               + "varying vec3 v_Normal;         \n"		// Eye space normal, passed into the fragment shader.
 
                + "void main()                    \n" 	// The entry point for our vertex shader.
                + "{                              \n"
-               // Ambient colour
-               + "    v_Color = a_Color * ambient;\n"
                // Transform the vertex into eye space.
-               + "   vec3 modelViewVertex = vec3(u_MVMatrix * a_Position);              \n"
-               // Normalise normal - do it here rather than on the CPU as it's quicker
-               + "   vec3 normalNormal = normalize(a_Normal);                           \n"
-               // Transform the normal's orientation into eye space.
-               + "   vec3 modelViewNormal = vec3(u_MVMatrix * vec4(normalNormal, 0.0));     \n"
-               // Get a lighting direction vector from the light to the vertex.
-               + "   vec3 lightVector = normalize(u_LightPos - modelViewVertex);        \n"
-               // Calculate the dot product of the light vector and vertex normal.
-               + "   float diffuse = abs(dot(modelViewNormal, lightVector));       \n"
-               // Multiply the color by the illumination level. It will be interpolated across the triangle.
-               + "   v_Color += brightness * a_Color * diffuse;                                       \n"
+               + "   v_Position = vec3(u_MVMatrix * a_Position);                        \n"
+               + "   v_Color    = a_Color;                                              \n"
+               // Contour value or resultant displacement, scaled so each contour band is one unit.
+               + "   float value = u_ContourValue > 0.5 ? a_Value : length(a_Position.xyz - a_Undef);  \n"
+               + "   v_Contour  = value < 0.0 ? -1.0 : value * u_ContourScale;          \n"
+               // Transform the normal into eye space.
+               + "   v_Normal   = vec3(u_MVMatrix * vec4(a_Normal, 0.0));               \n"
                // Multiply the vertex by the matrix to get the final point in normalized screen coordinates.
                + "   gl_Position = u_MVPMatrix * a_Position;                            \n"
                + "}                                                                     \n";
@@ -725,13 +1486,67 @@ public class MyRenderer implements GLSurfaceView.Renderer
 
     protected String getFragmentShader()
     {
-        return  "precision mediump float;        \n"		// Set the default precision to medium. We don't need as high of a
-                                                            // precision in the fragment shader.
+        // Vertices are shared between shells, so they can't carry a shell normal.
+        // Instead the flat normal of each triangle comes from the screen space
+        // derivatives of the eye space position. Without the derivatives extension
+        // the shells are drawn unlit. Smooth shading uses the interpolated nodal
+        // normals instead. Lines are always unlit.
+
+        return  "#extension GL_OES_standard_derivatives : enable \n"
+               + "#ifdef GL_FRAGMENT_PRECISION_HIGH \n"		// Derivatives of the position need high precision if we can get it
+               + "precision highp float;         \n"
+               + "#else                          \n"
+               + "precision mediump float;       \n"
+               + "#endif                         \n"
+
+               + "uniform vec3 u_LightPos;       \n"	    // The position of the light in eye space.
+               + "uniform float u_Contour;       \n"	    // 1.0 to contour, 0.0 for part colours.
+               + "uniform float u_Shading;       \n"	    // 2.0 for nodal normals, 1.0 for flat triangles, 0.0 unlit.
+               + "uniform sampler2D u_ContourTex;\n"	    // Contour colours, one texel per level.
+
+               + "varying vec3 v_Position;       \n"		// Eye space position interpolated across the triangle.
                + "varying vec4 v_Color;          \n"		// This is the color from the vertex shader interpolated across the
                                                             // triangle per fragment.
+               + "varying float v_Contour;       \n"		// Contoured quantity in contour bands interpolated across the triangle.
+               + "varying vec3 v_Normal;         \n"		// Nodal normal interpolated across the triangle.
+               + "const float ambient    = 0.3;  \n"
+               + "const float brightness = 0.7;  \n"
+
                + "void main()                    \n"		// The entry point for our fragment shader.
                + "{                              \n"
-               + "   gl_FragColor = v_Color;     \n"		// Pass the color directly through the pipeline.
+               // Get a lighting direction vector from the light to the fragment.
+               + "   vec3 lightVector = normalize(u_LightPos - v_Position);             \n"
+               + "   float diffuse;              \n"
+               + "   if(u_Shading < 0.5) {       \n"
+               // Unlit - lines have no normal.
+               + "      diffuse = 1.0;           \n"
+               + "   }                           \n"
+               + "   else if(u_Shading > 1.5) {  \n"
+               // Interpolated nodal normal.
+               + "      diffuse = abs(dot(normalize(v_Normal), lightVector));           \n"
+               + "   }                           \n"
+               + "   else {                      \n"
+               + "#ifdef GL_OES_standard_derivatives \n"
+               // Triangle normal from the change in position across the screen.
+               + "      vec3 normal = normalize(cross(dFdx(v_Position), dFdy(v_Position)));  \n"
+               // Calculate the dot product of the light vector and normal.
+               + "      diffuse = abs(dot(normal, lightVector));                        \n"
+               + "#else                          \n"
+               + "      diffuse = 1.0;           \n"
+               + "#endif                         \n"
+               + "   }                           \n"
+               // Contour band - the first level is zero, so the lowest values use the second colour.
+               // Parts without a value (no shells) are grey.
+               + "   vec4 color = v_Color;       \n"
+               + "   if(u_Contour > 0.5 && v_Contour < 0.0) {  \n"
+               + "      color = vec4(0.7, 0.7, 0.7, 1.0);      \n"
+               + "   }                           \n"
+               + "   else if(u_Contour > 0.5) {  \n"
+               + "      float band = min(floor(v_Contour) + 1.0, " + (NUM_CONTOUR_LEVELS - 1) + ".0);  \n"
+               + "      color = texture2D(u_ContourTex, vec2((band + 0.5) / " + NUM_CONTOUR_LEVELS + ".0, 0.5));  \n"
+               + "   }                           \n"
+               // Multiply the color by the illumination level.
+               + "   gl_FragColor = color * (ambient + brightness * diffuse);           \n"
                + "}                              \n";
     }
 
@@ -0,0 +1,159 @@
+package com.example.myfirstapp;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Smooth nodal normals for the faces that are drawn - shells and the
+ * exterior faces of solids.
+ *
+ * The faces attached to each node are held in compressed rows (CSR), built
+ * once from the face list by NodeAdjacency. Each state the normal of every face is worked
+ * out, then each node sums the normals of its faces. Face normals aren't
+ * normalised, so larger faces have more weight. Both passes are split into
+ * ranges and run in parallel, and neither writes to anything another range
+ * writes to.
+ */
+public class NodalNormals {
+
+    static {
+        System.loadLibrary("myUtils");
+    }
+
+    private final static String TAG = "NODAL_NORMALS";
+
+    /** Nodes per face */
+    final static int NODES_PER_FACE = NodeAdjacency.NODES_PER_FACE;
+
+    /** Elements per normal */
+    private final static int NORMAL_DATA_SIZE = 3;
+
+    /** Returned by the native functions if they succeed */
+    private final static int OK = 1;
+
+
+    /*
+    ** Native function to calculate the (area weighted) normals of faces <first> to <last>-1
+    */
+    private native int calcFaceNormals(FloatBuffer coords,
+                                       IntBuffer faces,
+                                       int first,
+                                       int last,
+                                       FloatBuffer faceNormals);
+
+    /*
+    ** Native function to sum and normalise the face normals at nodes <first> to <last>-1
+    */
+    private native int calcNodalNormals(IntBuffer start,
+                                        IntBuffer adjacent,
+                                        FloatBuffer faceNormals,
+                                        int first,
+                                        int last,
+                                        FloatBuffer normals);
+
+
+    /** Number of nodes */
+    private int mNumNodes;
+
+    /** Number of faces */
+    private int mNumFaces;
+
+    /** Faces, four nodes each */
+    private IntBuffer mFaces;
+
+    /** Start of each node's row in mAdjacent, plus the end of the last row */
+    private IntBuffer mStart;
+
+    /** Faces attached to each node, in face order */
+    private IntBuffer mAdjacent;
+
+    /** Face normals */
+    private FloatBuffer mFaceNormals;
+
+    /** Nodal normals */
+    private FloatBuffer mNormals;
+
+    /** Number of threads in mPool */
+    private int mNumThreads;
+
+    /** Thread pool, shared with the caller */
+    private ExecutorService mPool;
+
+
+
+    /**
+     * NodalNormals constructor. Builds the node to face adjacency
+     * @param numNodes Number of nodes
+     * @param faces Faces, four nodes each numbered from 1. Direct, in native byte order
+     * @param numFaces Number of faces
+     * @param pool Thread pool to run on
+     * @param nthreads Number of threads in <pool>
+     */
+    public NodalNormals(int numNodes, IntBuffer faces, int numFaces, ExecutorService pool, int nthreads) {
+        super();
+
+        mNumNodes = numNodes;
+        mNumFaces = numFaces;
+        mFaces    = faces;
+
+        mNumThreads = nthreads;
+        mPool       = pool;
+
+        long t0 = System.currentTimeMillis();
+
+        NodeAdjacency adjacency = new NodeAdjacency(numNodes, faces, NODES_PER_FACE, numFaces, pool, nthreads);
+
+        // The native code needs direct buffers
+
+        mStart = ByteBuffer.allocateDirect(adjacency.mStart.length * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        mStart.put(adjacency.mStart);
+        mStart.position(0);
+
+        mAdjacent = ByteBuffer.allocateDirect(Math.max(1, adjacency.mAdjacent.length) * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        mAdjacent.put(adjacency.mAdjacent);
+        mAdjacent.position(0);
+
+        Log.d(TAG, "Adjacency for " + Integer.toString(numNodes) + " nodes in " +
+                   Long.toString(System.currentTimeMillis() - t0) + "ms");
+
+        mFaceNormals = ByteBuffer.allocateDirect(Math.max(1, numFaces) * NORMAL_DATA_SIZE * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        mNormals     = ByteBuffer.allocateDirect(numNodes * NORMAL_DATA_SIZE * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+
+    /**
+     * Calculates the nodal normals for a state
+     * @param coords Current coordinates
+     * @return the normals, three per node
+     */
+    public FloatBuffer update(final FloatBuffer coords) {
+
+        // Face normals, then nodal normals - the second pass needs all of the first.
+        // A failed range is thrown from Parallel.run
+
+        Parallel.run(mPool, mNumThreads, mNumFaces, new Parallel.RangeTask() {
+            public void run(int first, int last) {
+                if(calcFaceNormals(coords, mFaces, first, last, mFaceNormals) != OK) {
+                    throw new RuntimeException("Error calculating face normals.");
+                }
+            }
+        });
+
+        Parallel.run(mPool, mNumThreads, mNumNodes, new Parallel.RangeTask() {
+            public void run(int first, int last) {
+                if(calcNodalNormals(mStart, mAdjacent, mFaceNormals, first, last, mNormals) != OK) {
+                    throw new RuntimeException("Error calculating nodal normals.");
+                }
+            }
+        });
+
+        mNormals.position(0);
+
+        return mNormals;
+    }
+}
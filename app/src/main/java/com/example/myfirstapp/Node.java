@@ -1,11 +1,7 @@
 package com.example.myfirstapp;
 
-import android.util.Log;
-
-import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
-import java.nio.channels.FileChannel;
 
 public class Node {
 
@@ -45,41 +41,15 @@ public class Node {
      */
     private void readUndefCoords(Family fam) {
 
-        FileChannel ch   = fam.getFileChannel();
-        long        addr = fam.getUndefCoordAddr();
-
-        int length = NUM * L_COR * 4; // * 4 for bytes
-
-        // ByteBuffer for coordinates
-
-        ByteBuffer bb = ByteBuffer.allocateDirect( length );
+        long addr = fam.getUndefCoordAddr();
 
-        // Byte order
+// Slice of the geometry block, already in native byte order
 
-        bb.order(fam.getEndianess());
+        ByteBuffer bb = fam.getGeometryData(addr, NUM * L_COR);
 
-        // View as FloatBuffer
+// View as FloatBuffer
 
         undefCoords = bb.asFloatBuffer();
-
-
-        try {
-// Position to start of undeformed coordinate data
-
-            ch.position(addr*4);  // * 4 for bytes
-
-// Read coordinates into byte buffer
-
-            ch.read( bb );
-
-        } catch (IOException e) {
-
-            Log.d("MY_DEBUG", "Failed to get undeformed coordinates...");
-
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
-
     }
 
 
@@ -0,0 +1,136 @@
+package com.example.myfirstapp;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The faces (or elements) attached to each node, held in compressed rows
+ * (CSR). Built from a list of faces of up to four nodes each - count the
+ * faces at each node, turn the counts into row starts, then drop each face
+ * into its rows. The counting and filling are split into ranges of faces
+ * and run in parallel, then each row is sorted so it is in face order.
+ */
+public class NodeAdjacency {
+
+    /** Nodes per face */
+    final static int NODES_PER_FACE = 4;
+
+    /** Start of each node's row in mAdjacent, plus the end of the last row */
+    final int[] mStart;
+
+    /** Faces attached to each node, in face order */
+    final int[] mAdjacent;
+
+    /** Number of nodes, faces and the words per face in the face list */
+    private int mNumNodes;
+    private int mNumFaces;
+    private int mStride;
+
+    /** Faces, <mStride> words each starting with the nodes, numbered from 1 */
+    private IntBuffer mFaces;
+
+
+
+    /**
+     * NodeAdjacency constructor. Builds the adjacency on <pool>
+     * @param numNodes Number of nodes
+     * @param faces Faces, <stride> words each starting with four nodes numbered from 1
+     * @param stride Words per face - NODES_PER_FACE for a face list, Shell.L_TOP for shell topology
+     * @param numFaces Number of faces
+     * @param pool Thread pool
+     * @param nthreads Number of threads in <pool>
+     */
+    public NodeAdjacency(int numNodes, IntBuffer faces, int stride, int numFaces, ExecutorService pool, int nthreads) {
+        super();
+
+        mNumNodes = numNodes;
+        mNumFaces = numFaces;
+        mStride   = stride;
+        mFaces    = faces;
+
+        final AtomicIntegerArray count = new AtomicIntegerArray(mNumNodes);
+
+        // Count, in parallel over faces
+
+        Parallel.run(pool, nthreads, mNumFaces, new Parallel.RangeTask() {
+            public void run(int first, int last) {
+
+                int[] nodes = new int[NODES_PER_FACE];
+
+                for(int i=first; i<last; i++) {
+
+                    int n = getFaceNodes(i, nodes);
+
+                    for(int j=0; j<n; j++) count.incrementAndGet(nodes[j]);
+                }
+            }
+        });
+
+        // Row starts
+
+        final int[] start = new int[mNumNodes + 1];
+
+        for(int i=0; i<mNumNodes; i++) start[i+1] = start[i] + count.get(i);
+
+        // Fill, in parallel over faces. count becomes the next free slot in each row
+
+        for(int i=0; i<mNumNodes; i++) count.set(i, start[i]);
+
+        final int[] adjacent = new int[start[mNumNodes]];
+
+        Parallel.run(pool, nthreads, mNumFaces, new Parallel.RangeTask() {
+            public void run(int first, int last) {
+
+                int[] nodes = new int[NODES_PER_FACE];
+
+                for(int i=first; i<last; i++) {
+
+                    int n = getFaceNodes(i, nodes);
+
+                    for(int j=0; j<n; j++) adjacent[count.getAndIncrement(nodes[j])] = i;
+                }
+            }
+        });
+
+        // Rows are filled in any order - sort them so sums over a row always go the same way
+
+        Parallel.run(pool, nthreads, mNumNodes, new Parallel.RangeTask() {
+            public void run(int first, int last) {
+
+                for(int i=first; i<last; i++) Arrays.sort(adjacent, start[i], start[i+1]);
+            }
+        });
+
+        mStart    = start;
+        mAdjacent = adjacent;
+    }
+
+
+    /**
+     * Gets the distinct internal nodes of a face. Triangles repeat a node
+     * @param iface Face
+     * @param nodes Nodes - filled in
+     * @return the number of nodes
+     */
+    private int getFaceNodes(int iface, int[] nodes) {
+
+        int n = 0;
+
+        for(int j=0; j<NODES_PER_FACE; j++) {
+
+            int node = mFaces.get(j + mStride * iface) - 1;
+
+            if(node < 0 || node >= mNumNodes) continue;
+
+            boolean repeat = false;
+
+            for(int k=0; k<n; k++) if(nodes[k] == node) repeat = true;
+
+            if(!repeat) nodes[n++] = node;
+        }
+
+        return n;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.myfirstapp;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Splits loops over items into ranges and runs the ranges on a thread pool.
+ */
+public class Parallel {
+
+    private final static String TAG = "PARALLEL";
+
+    /** A range of items to process */
+    public interface RangeTask {
+        void run(int first, int last);
+    }
+
+
+
+    /**
+     * @return the number of threads worth using
+     */
+    public static int getNumThreads() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors());
+    }
+
+
+    /**
+     * Runs <task> over 0 to <n>-1 on a temporary pool, one range per thread
+     * @param n Number of items
+     * @param task Task
+     */
+    public static void run(int n, RangeTask task) {
+
+        int nthreads = Math.max(1, Math.min(n, getNumThreads()));
+
+        ExecutorService pool = Executors.newFixedThreadPool(nthreads);
+
+        try {
+            run(pool, nthreads, n, task);
+
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+
+    /**
+     * Runs <task> over 0 to <n>-1, split into <nranges> ranges on <pool>, and
+     * waits for every range to finish. An interrupt while waiting doesn't stop
+     * the wait, as the ranges would still be writing to the caller's data - the
+     * thread's interrupt flag is set again before returning. If a range fails
+     * its exception is thrown once all the ranges are done
+     * @param pool Thread pool
+     * @param nranges Number of ranges
+     * @param n Number of items
+     * @param task Task
+     */
+    public static void run(ExecutorService pool, int nranges, int n, final RangeTask task) {
+
+        nranges = Math.max(1, Math.min(n, nranges));
+
+        ArrayList<Future<Void>> results = new ArrayList<Future<Void>>();
+
+        for(int i=0; i<nranges; i++) {
+
+            final int first = (int)((long)n * i       / nranges);
+            final int last  = (int)((long)n * (i + 1) / nranges);
+
+            results.add(pool.submit(new Callable<Void>() {
+                public Void call() {
+                    task.run(first, last);
+                    return null;
+                }
+            }));
+        }
+
+        boolean   interrupted = false;
+        Throwable failure     = null;
+
+        for(int i=0; i<results.size(); i++) {
+
+            try {
+                results.get(i).get();
+
+            } catch (InterruptedException e) {
+
+                Log.d(TAG, "Interrupted in <run>, waiting for the ranges to finish");
+
+                interrupted = true;
+                i--;
+
+            } catch (ExecutionException e) {
+
+                Log.d(TAG, "Failed in <run>");
+
+                if(failure == null) failure = e.getCause();
+            }
+        }
+
+        if(interrupted) Thread.currentThread().interrupt();
+
+        if(failure instanceof RuntimeException) throw (RuntimeException)failure;
+        if(failure instanceof Error)            throw (Error)failure;
+        if(failure != null)                     throw new RuntimeException(failure);
+    }
+}
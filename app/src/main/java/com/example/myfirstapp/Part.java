@@ -1,5 +1,7 @@
 package com.example.myfirstapp;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.IntBuffer;
 
 public class Part {
@@ -10,11 +12,11 @@ public class Part {
     /** Element type list */
     private static int[] mType;
 
-    /** Number of elements in part */
-    private static int[] mNumInPart;
+    /** Start of each part's elements in mElements, plus the end of the last part */
+    private static int[] mStart;
 
-    /** List of elements in parts */
-    private static int[][] mElList;
+    /** Elements of all the parts, part by part, in element order */
+    private static IntBuffer mElements;
 
     /** Part colour */
     private static float[] mRGB = new float[3];
@@ -29,81 +31,196 @@ public class Part {
 
 
     /** Create the part lists
+     *
+     * The elements of every part are held in one array, part by part
+     * (compressed rows), built by a counting sort. Each element type is
+     * split into chunks, and the chunks are counted and then placed in
+     * parallel. Chunks write to their own slots in each part, so the
+     * elements stay in order.
      *
      * @param fam Family
      */
     private void createPartLists(Family fam) {
 
-        // Initialise number of elements in part list
-        // and element type list
+        final int nparts  = mNum;
+        final int nchunks = Parallel.getNumThreads();
+
+        // For each element type count how many of each chunk are in each part
+
+        int[][][] count = new int[Element.LAST + 1][][];
+
+        for(int type=Element.FIRST; type<=Element.LAST; type++) {
+
+            final IntBuffer top = getTop(fam, type);
+
+            if(top == null) continue;
+
+            final int ltop = getTopLength(type);
+            final int n    = getNumEls(fam, type);
+
+            final int[][] tcount = new int[nchunks][nparts];
 
-        mNumInPart = new int[mNum];
-        mType      = new int[mNum];
+            Parallel.run(nchunks, new Parallel.RangeTask() {
+                public void run(int first, int last) {
 
-        for(int i=0; i<mNum; i++) {
-            mNumInPart[i] = 0;
-            mType[i]      = 0;
+                    for(int c=first; c<last; c++) {
+
+                        int[] cc = tcount[c];
+
+                        int i1 = getFirstEl(c + 1, nchunks, n);
+
+                        for(int i=getFirstEl(c, nchunks, n); i<i1; i++) {
+
+                            int pid = top.get(((ltop-1) + ltop*i)) - 1;
+
+                            if(pid >= 0 && pid < nparts) cc[pid]++;
+                        }
+                    }
+                }
+            });
+
+            count[type] = tcount;
         }
 
-        // For each element type count how many are in each part
-        // and store the element type of the part
-        // TODO: for now we only render shell elements
+        // Element type of each part - a part only has one element type, the last one found
 
+        mType = new int[nparts];
 
         for(int type=Element.FIRST; type<=Element.LAST; type++) {
 
-            int n = 0, ltop = 0;
-            IntBuffer top = null;
+            if(count[type] == null) continue;
 
-            switch(type) {
+            for(int p=0; p<nparts; p++) {
+                for(int c=0; c<nchunks; c++) {
+                    if(count[type][c][p] > 0) { mType[p] = type;  break; }
+                }
+            }
+        }
+
+        // Part starts, and where each chunk starts writing in each part
+
+        mStart = new int[nparts + 1];
+
+        final int[][] offset = new int[nchunks][nparts];
+
+        int pos = 0;
+
+        for(int p=0; p<nparts; p++) {
+
+            mStart[p] = pos;
 
-                case Element.SOLID:  { continue; }   // Ignore SOLIDs for now
-                case Element.BEAM:   { continue; }   // Ignore BEAMS for now
-                case Element.SHELL:  { top = Shell.getTop();  ltop = Shell.L_TOP;  n = fam.getNumShells();  break; }
-                case Element.TSHELL: { continue; }   // Ignore TSHELLs for now
+            if(mType[p] == 0) continue;
 
+            int[][] tcount = count[mType[p]];
+
+            for(int c=0; c<nchunks; c++) {
+                offset[c][p] = pos;
+                pos += tcount[c][p];
             }
+        }
+
+        mStart[nparts] = pos;
+
+        // Place the elements - direct so it can be passed to native code
+
+        mElements = ByteBuffer.allocateDirect(Math.max(1, pos) * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+
+        for(int type=Element.FIRST; type<=Element.LAST; type++) {
+
+            if(count[type] == null) continue;
 
-            // Number of elements per part
+            final IntBuffer top = getTop(fam, type);
 
-            int pid;
+            final int ltop  = getTopLength(type);
+            final int n     = getNumEls(fam, type);
+            final int ftype = type;
 
-            for(int i=0; i<n; i++) {
+            Parallel.run(nchunks, new Parallel.RangeTask() {
+                public void run(int first, int last) {
 
-                pid = top.get(((ltop-1) + ltop*i)) - 1;
+                    for(int c=first; c<last; c++) {
 
-                if(pid >= 0 && pid < mNum)
-                {
-                    mNumInPart[pid]++;
+                        int[] co = offset[c];
 
-                    mType[pid] = type;  // Element type
+                        int i1 = getFirstEl(c + 1, nchunks, n);
+
+                        for(int i=getFirstEl(c, nchunks, n); i<i1; i++) {
+
+                            int pid = top.get(((ltop-1) + ltop*i)) - 1;
+
+                            if(pid >= 0 && pid < nparts && mType[pid] == ftype) mElements.put(co[pid]++, i);
+                        }
+                    }
                 }
-            }
+            });
+        }
+    }
 
-            // Now initialize element list
-            // and populate element type list
 
-            mElList = new int[mNum][];
+    /**
+     * @param chunk Chunk
+     * @param nchunks Number of chunks
+     * @param n Number of elements
+     * @return the first element in <chunk>
+     */
+    private static int getFirstEl(int chunk, int nchunks, int n) {
+        return (int)((long)n * chunk / nchunks);
+    }
 
-            for(int i=0; i<mNum; i++) {
 
-                mElList[i] = new int[mNumInPart[i]];
+    /**
+     * @param fam Family
+     * @param type Element type
+     * @return the topology for element type <type>, or null if it isn't rendered
+     */
+    private static IntBuffer getTop(Family fam, int type) {
 
-                // Reset so we can use it as an index when we populate
-                // the list below.  It gets recreated there.
-                mNumInPart[i] = 0;
-            }
+        switch(type) {
 
-            // Populate list
+            case Element.SOLID:  { return fam.getNumSolids() > 0 ? Solid.getTop() : null; }
+            case Element.BEAM:   { return fam.getNumBeams()  > 0 ? Beam.getTop()  : null; }
+            case Element.SHELL:  { return fam.getNumShells() > 0 ? Shell.getTop() : null; }
+            case Element.TSHELL: { return fam.getNumThickShells() > 0 ? TShell.getTop() : null; }
+        }
 
-            for(int i=0; i<n; i++) {
+        return null;
+    }
 
-                pid = top.get(((ltop-1) + ltop*i)) - 1;
 
-                if(pid >=0 && pid < mNum) mElList[pid][mNumInPart[pid]++] = i;
-            }
+    /**
+     * @param type Element type
+     * @return the length of a topology entry for element type <type>
+     */
+    private static int getTopLength(int type) {
+
+        switch(type) {
+
+            case Element.SOLID:  { return Solid.L_TOP; }
+            case Element.BEAM:   { return Beam.L_TOP; }
+            case Element.SHELL:  { return Shell.L_TOP; }
+            case Element.TSHELL: { return TShell.L_TOP; }
+        }
+
+        return 0;
+    }
+
+
+    /**
+     * @param fam Family
+     * @param type Element type
+     * @return the number of elements of type <type>
+     */
+    private static int getNumEls(Family fam, int type) {
+
+        switch(type) {
+
+            case Element.SOLID:  { return fam.getNumSolids(); }
+            case Element.BEAM:   { return fam.getNumBeams(); }
+            case Element.SHELL:  { return fam.getNumShells(); }
+            case Element.TSHELL: { return fam.getNumThickShells(); }
         }
 
+        return 0;
     }
 
 
@@ -111,7 +228,7 @@ public class Part {
      * @param i, internal part
      * @return The number of elements in internal part i
      */
-    public static int getNumElsInPart(int i) { return mNumInPart[i]; }
+    public static int getNumElsInPart(int i) { return mStart[i+1] - mStart[i]; }
 
 
     /**
@@ -121,16 +238,22 @@ public class Part {
      * @return Internal element ID of j'th element in i'th part
      */
     public static int getElementInPart(int i, int j) {
-        return mElList[i][j];
+        return mElements.get(mStart[i] + j);
     }
 
     /**
      *
      * @param i, internal part
-     * @return Array of element indices in part i
+     * @return Elements in part i - a view of the part lists, no data is copied
      */
-    public static int[] getElsInPart(int i) {
-        return mElList[i];
+    public static IntBuffer getElsInPart(int i) {
+
+        IntBuffer els = mElements.duplicate();
+
+        els.position(mStart[i]);
+        els.limit(mStart[i+1]);
+
+        return els.slice();
     }
 
 
@@ -0,0 +1,203 @@
+package com.example.myfirstapp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+
+/**
+ * Indexed mesh for the elements in a part. Shells and the exterior faces
+ * of solids are drawn as triangles, beams as lines.
+ *
+ * Each node used by the part is one vertex, shared by all the elements that
+ * use it, and the elements are drawn from a static index list. The vertex
+ * positions are the only thing that change from state to state.
+ *
+ * OpenGL ES 2.0 only guarantees 16 bit indices, so a part with more than
+ * MAX_VERTICES nodes is split into several meshes.
+ */
+public class PartMesh {
+
+    /** Maximum vertices in a mesh - indices are unsigned shorts */
+    final static int MAX_VERTICES = 65535;
+
+    /** Nodes per quad */
+    private final static int NODES_PER_QUAD = 4;
+
+    /** Triangle indices per quad */
+    final static int INDICES_PER_QUAD = 6;
+
+    /** Nodes (and indices) per line */
+    private final static int NODES_PER_LINE = 2;
+
+    /** Internal part */
+    int mPart;
+
+    /** True if drawn as lines, otherwise triangles */
+    boolean mLines;
+
+    /** Number of vertices */
+    int mNumVertices;
+
+    /** Internal node for each vertex */
+    IntBuffer mNodes;
+
+    /** Number of indices */
+    int mNumIndices;
+
+    /** Triangle indices - offset by mFirstVertex once the mesh is in a batch */
+    ShortBuffer mIndices;
+
+    /** First vertex and first index of the mesh in its batch */
+    int mFirstVertex;
+    int mFirstIndex;
+
+    /** Number of indices in the coarse mesh */
+    int mNumLodIndices;
+
+    /** Coarse mesh indices, drawn while the model is moving - null to use the full mesh */
+    ShortBuffer mLodIndices;
+
+
+
+    /**
+     * PartMesh constructor
+     * @param ipart Internal part
+     * @param lines True for lines, false for triangles
+     * @param nodes Internal node for each vertex
+     * @param numVertices Number of vertices
+     * @param indices Triangle indices
+     * @param numIndices Number of indices
+     */
+    private PartMesh(int ipart, boolean lines, int[] nodes, int numVertices, short[] indices, int numIndices) {
+        super();
+
+        mPart        = ipart;
+        mLines       = lines;
+        mNumVertices = numVertices;
+        mNumIndices  = numIndices;
+
+        mNodes = ByteBuffer.allocateDirect(numVertices * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        mNodes.put(nodes, 0, numVertices);
+        mNodes.position(0);
+
+        mIndices = ByteBuffer.allocateDirect(numIndices * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
+        mIndices.put(indices, 0, numIndices);
+        mIndices.position(0);
+    }
+
+
+    /**
+     * Creates the meshes for the shells in a part
+     * @param ipart Internal part
+     * @param top Shell topology
+     * @param els Internal shell indices in the part
+     * @param local Work array, one entry per node, all -1. Left all -1
+     * @return the meshes for the part
+     */
+    public static ArrayList<PartMesh> createPartMeshes(int ipart, IntBuffer top, IntBuffer els, int[] local) {
+        return createMeshes(ipart, top, Shell.L_TOP, NODES_PER_QUAD, els, els.limit(), local);
+    }
+
+
+    /**
+     * Creates the line meshes for the beams in a part
+     * @param ipart Internal part
+     * @param top Beam topology
+     * @param els Internal beam indices in the part
+     * @param local Work array, one entry per node, all -1. Left all -1
+     * @return the meshes for the part
+     */
+    public static ArrayList<PartMesh> createLineMeshes(int ipart, IntBuffer top, IntBuffer els, int[] local) {
+        return createMeshes(ipart, top, Beam.L_TOP, NODES_PER_LINE, els, els.limit(), local);
+    }
+
+
+    /**
+     * Creates the meshes for the exterior faces of a solid part
+     * @param ipart Internal part
+     * @param faces Faces, four nodes each
+     * @param numFaces Number of faces
+     * @param local Work array, one entry per node, all -1. Left all -1
+     * @return the meshes for the part
+     */
+    public static ArrayList<PartMesh> createFaceMeshes(int ipart, IntBuffer faces, int numFaces, int[] local) {
+        return createMeshes(ipart, faces, SolidSkin.NODES_PER_FACE, NODES_PER_QUAD, null, numFaces, local);
+    }
+
+
+    /**
+     * Creates the meshes for a list of quads or lines
+     * @param ipart Internal part
+     * @param top Topology - the first words of each entry are the nodes
+     * @param ltop Length of a topology entry
+     * @param nnodes Nodes per element - NODES_PER_QUAD or NODES_PER_LINE
+     * @param els Entries in the part, or null for entries 0 to <n>-1
+     * @param n Number of elements
+     * @param local Work array, one entry per node, all -1. Left all -1
+     * @return the meshes
+     */
+    private static ArrayList<PartMesh> createMeshes(int ipart, IntBuffer top, int ltop, int nnodes, IntBuffer els, int n, int[] local) {
+
+        ArrayList<PartMesh> meshes = new ArrayList<PartMesh>();
+
+        boolean lines = nnodes == NODES_PER_LINE;
+
+        int maxNodes = Math.min(MAX_VERTICES, n * nnodes);
+
+        int[]   nodes   = new int[maxNodes];
+        short[] indices = new short[n * (lines ? NODES_PER_LINE : INDICES_PER_QUAD)];
+
+        int nv = 0, ni = 0;
+
+        int[] v = new int[nnodes];
+
+        for(int i=0; i<n; i++) {
+
+            int el = els == null ? i : els.get(i);
+
+            // Start a new mesh if this element might not fit
+
+            if(nv + nnodes > MAX_VERTICES) {
+
+                meshes.add(new PartMesh(ipart, lines, nodes, nv, indices, ni));
+
+                for(int j=0; j<nv; j++) local[nodes[j]] = -1;
+
+                nv = 0;
+                ni = 0;
+            }
+
+            // Local vertex for each node, adding nodes not seen before
+
+            for(int j=0; j<nnodes; j++) {
+
+                int node = top.get(j + ltop * el) - 1;
+
+                if(local[node] < 0) {
+                    local[node] = nv;
+                    nodes[nv++] = node;
+                }
+
+                v[j] = local[node];
+            }
+
+            // One line per beam, two triangles per quad
+
+            if(lines) {
+                indices[ni++] = (short)v[0];  indices[ni++] = (short)v[1];
+            }
+            else {
+                indices[ni++] = (short)v[0];  indices[ni++] = (short)v[1];  indices[ni++] = (short)v[2];
+                indices[ni++] = (short)v[2];  indices[ni++] = (short)v[3];  indices[ni++] = (short)v[0];
+            }
+        }
+
+        if(ni > 0) meshes.add(new PartMesh(ipart, lines, nodes, nv, indices, ni));
+
+        for(int j=0; j<nv; j++) local[nodes[j]] = -1;
+
+        return meshes;
+    }
+}
@@ -1,11 +1,7 @@
 package com.example.myfirstapp;
 
-import android.util.Log;
-
-import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
-import java.nio.channels.FileChannel;
 
 public class Shell {
 
@@ -42,41 +38,15 @@ public class Shell {
      */
     private void readTopology(Family fam) {
 
-        FileChannel ch   = fam.getFileChannel();
-        long        addr = fam.getShellTopAddr();
-
-
-        int length = mNum * L_TOP * 4; // * 4 for bytes
-
+        long addr = fam.getShellTopAddr();
 
-        // ByteBuffer for topology
+// Slice of the geometry block, already in native byte order
 
-        ByteBuffer bb = ByteBuffer.allocateDirect( length );
+        ByteBuffer bb = fam.getGeometryData(addr, mNum * L_TOP);
 
-        // Byte order
-
-        bb.order(fam.getEndianess());
-
-        // View as IntBuffer
+// View as IntBuffer
 
         top = bb.asIntBuffer();
-
-        try {
-// Position to start of undeformed coordinate data
-
-            ch.position(addr*4);  // * 4 for bytes
-
-// Read coordinates into byte buffer
-
-            ch.read( bb );
-
-        } catch (IOException e) {
-
-            Log.d("MY_DEBUG", "Failed to get shell topology...");
-
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
     }
 
 
@@ -0,0 +1,322 @@
+package com.example.myfirstapp;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Shell results for contouring - the von Mises stress or the effective
+ * plastic strain of every shell at one integration point.
+ *
+ * The results are read straight from the state's member mapping when they
+ * are asked for, and only the values of the chosen integration point are
+ * touched. The shells are split into ranges and each range works out its
+ * own shells and its own maximum. The vertices of the drawn meshes are
+ * shared between shells, so the shell values are then averaged at the
+ * nodes, in parallel over node ranges using the shells attached to each
+ * node (a NodeAdjacency of the shell topology). Nodes with no shells get
+ * NO_VALUE. The work runs on the caller's thread pool.
+ */
+public class ShellResults {
+
+    private final static String TAG = "SHELL_RESULTS";
+
+    /** Quantities */
+    final static int VON_MISES      = 0;
+    final static int PLASTIC_STRAIN = 1;
+
+    final static int NUM_QUANTITIES = 2;
+
+    private final static String[] QUANTITY_NAMES = { "von Mises", "Plastic strain" };
+
+    /** Value of nodes with no shells. The quantities are never negative */
+    final static float NO_VALUE = -1.0f;
+
+    /** Family */
+    private Family mFam;
+
+    /** Number of shells and nodes */
+    private int mNumShells;
+    private int mNumNodes;
+
+    /** Start of each node's row in mAdjacent, plus the end of the last row */
+    private int[] mStart;
+
+    /** Shells attached to each node, in shell order */
+    private int[] mAdjacent;
+
+    /** Value of each shell */
+    private float[] mShellValues;
+
+    /** Value of each node - the average of its shells */
+    private FloatBuffer mNodalValues;
+
+    /** Maximum of each range of shells */
+    private float[] mRangeMax;
+
+    /** What the values are for */
+    private State mState;
+    private int   mQuantity = -1;
+    private int   mIntPoint = -1;
+    private float mMax      = Float.NaN;
+
+    /** Number of threads in mPool */
+    private int mNumThreads;
+
+    /** Thread pool, shared with the caller */
+    private ExecutorService mPool;
+
+
+
+    /**
+     * ShellResults constructor. Builds the node to shell adjacency
+     * @param fam Family
+     * @param pool Thread pool to run on
+     * @param nthreads Number of threads in <pool>
+     */
+    public ShellResults(Family fam, ExecutorService pool, int nthreads) {
+        super();
+
+        mFam       = fam;
+        mNumShells = fam.getNumShells();
+        mNumNodes  = fam.getNumNodes();
+
+        mNumThreads = nthreads;
+        mPool       = pool;
+
+        long t0 = System.currentTimeMillis();
+
+        NodeAdjacency adjacency = new NodeAdjacency(mNumNodes, Shell.getTop(), Shell.L_TOP, mNumShells, pool, nthreads);
+
+        mStart    = adjacency.mStart;
+        mAdjacent = adjacency.mAdjacent;
+
+        Log.d(TAG, "Adjacency for " + Integer.toString(mNumShells) + " shells in " +
+                   Long.toString(System.currentTimeMillis() - t0) + "ms");
+
+        mShellValues = new float[mNumShells];
+        mRangeMax    = new float[mNumThreads];
+        mNodalValues = ByteBuffer.allocateDirect(Math.max(1, mNumNodes) * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+
+    /**
+     * @param quantity VON_MISES or PLASTIC_STRAIN
+     * @return true if the states have <quantity>
+     */
+    public boolean hasQuantity(int quantity) {
+        return getOffset(quantity, 0) >= 0;
+    }
+
+
+    /**
+     * @param quantity VON_MISES or PLASTIC_STRAIN
+     * @return the name of <quantity>, for display
+     */
+    public static String getQuantityName(int quantity) {
+        return QUANTITY_NAMES[quantity];
+    }
+
+
+    /**
+     * @param quantity VON_MISES or PLASTIC_STRAIN
+     * @param ip Integration point, from 0
+     * @return the offset of the values <quantity> is worked out from in each shell's results, or -1 if they aren't written
+     */
+    private int getOffset(int quantity, int ip) {
+        return quantity == VON_MISES ? mFam.getShellStressOffset(ip) : mFam.getShellStrainOffset(ip);
+    }
+
+
+    /**
+     * Works out <quantity> at an integration point for every shell in a
+     * state, and averages it at the nodes. Nothing is done if the values are
+     * already for this state, quantity and integration point
+     * @param state State
+     * @param quantity VON_MISES or PLASTIC_STRAIN
+     * @param ip Integration point, from 0
+     * @return the value at each node, or null if the state doesn't have <quantity>
+     */
+    public FloatBuffer update(State state, int quantity, int ip) {
+
+        if(state == mState && quantity == mQuantity && ip == mIntPoint) {
+
+            mNodalValues.position(0);
+
+            return mNodalValues;
+        }
+
+        final int offset = getOffset(quantity, ip);
+
+        if(offset < 0) return null;
+
+        ByteBuffer data = state.getShellBlockData();
+
+        if(data == null) return null;
+
+        long t0 = System.currentTimeMillis();
+
+        // Shell values, in parallel over shell ranges - one range per thread, each with its own maximum
+
+        final FloatBuffer values = data.asFloatBuffer();
+        final int         stride = mFam.getNumShellVariables();
+        final boolean     stress = quantity == VON_MISES;
+
+        Parallel.run(mPool, mNumThreads, mNumThreads, new Parallel.RangeTask() {
+            public void run(int first, int last) {
+
+                for(int c=first; c<last; c++) {
+
+                    int i0 = (int)((long)mNumShells * c       / mNumThreads);
+                    int i1 = (int)((long)mNumShells * (c + 1) / mNumThreads);
+
+                    mRangeMax[c] = stress ? vonMises(values, stride, offset, i0, i1, mShellValues)
+                                          : copy(values, stride, offset, i0, i1, mShellValues);
+                }
+            }
+        });
+
+        float max = Float.NEGATIVE_INFINITY;
+
+        for(int c=0; c<mNumThreads; c++) if(mRangeMax[c] > max) max = mRangeMax[c];
+
+        // Nodal averages, in parallel over node ranges
+
+        Parallel.run(mPool, mNumThreads, mNumNodes, new Parallel.RangeTask() {
+            public void run(int first, int last) {
+                average(mStart, mAdjacent, mShellValues, first, last, mNodalValues);
+            }
+        });
+
+        mState    = state;
+        mQuantity = quantity;
+        mIntPoint = ip;
+        mMax      = max != Float.NEGATIVE_INFINITY ? max : Float.NaN;
+
+        Log.d(TAG, QUANTITY_NAMES[quantity] + " at integration point " + Integer.toString(ip + 1) + " of state " +
+                   Integer.toString(state.mNum) + " in " + Long.toString(System.currentTimeMillis() - t0) + "ms");
+
+        mNodalValues.position(0);
+
+        return mNodalValues;
+    }
+
+
+    /**
+     * @return the value of each shell from the last update
+     */
+    public float[] getShellValues() {
+        return mShellValues;
+    }
+
+
+    /**
+     * @return the maximum shell value from the last update, or NaN if there is none
+     */
+    public float getMax() {
+        return mMax;
+    }
+
+
+    /**
+     * Works out the von Mises stress of shells <first> to <last>-1
+     * @param values Shell results, <stride> per shell
+     * @param stride Number of results per shell
+     * @param offset Offset of the stresses in each shell's results
+     * @param first First shell
+     * @param last Last shell + 1
+     * @param out Value of each shell - filled in
+     * @return the maximum
+     */
+    static float vonMises(FloatBuffer values, int stride, int offset, int first, int last, float[] out) {
+
+        float max = Float.NEGATIVE_INFINITY;
+
+        for(int i=first, j=first*stride+offset; i<last; i++, j+=stride) {
+
+            float sx  = values.get(j);
+            float sy  = values.get(j + 1);
+            float sz  = values.get(j + 2);
+            float sxy = values.get(j + 3);
+            float syz = values.get(j + 4);
+            float szx = values.get(j + 5);
+
+            float dxy = sx - sy, dyz = sy - sz, dzx = sz - sx;
+
+            float v = (float)Math.sqrt(0.5f * (dxy * dxy + dyz * dyz + dzx * dzx) + 3.0f * (sxy * sxy + syz * syz + szx * szx));
+
+            out[i] = v;
+
+            max = v > max ? v : max;
+        }
+
+        return max;
+    }
+
+
+    /**
+     * Copies one result of shells <first> to <last>-1 - the plastic strain
+     * @param values Shell results, <stride> per shell
+     * @param stride Number of results per shell
+     * @param offset Offset of the result in each shell's results
+     * @param first First shell
+     * @param last Last shell + 1
+     * @param out Value of each shell - filled in
+     * @return the maximum
+     */
+    static float copy(FloatBuffer values, int stride, int offset, int first, int last, float[] out) {
+
+        float max = Float.NEGATIVE_INFINITY;
+
+        for(int i=first, j=first*stride+offset; i<last; i++, j+=stride) {
+
+            float v = values.get(j);
+
+            out[i] = v;
+
+            max = v > max ? v : max;
+        }
+
+        return max;
+    }
+
+
+    /**
+     * Averages the shell values at nodes <first> to <last>-1
+     * @param start Start of each node's row in <adjacent>
+     * @param adjacent Shells attached to each node
+     * @param shellValues Value of each shell
+     * @param first First node
+     * @param last Last node + 1
+     * @param out Value of each node - filled in
+     */
+    static void average(int[] start, int[] adjacent, float[] shellValues, int first, int last, FloatBuffer out) {
+
+        for(int i=first; i<last; i++) {
+
+            int j0 = start[i], j1 = start[i+1];
+
+            if(j0 == j1) {
+                out.put(i, NO_VALUE);
+                continue;
+            }
+
+            float sum = 0.0f;
+
+            for(int j=j0; j<j1; j++) sum += shellValues[adjacent[j]];
+
+            out.put(i, sum / (j1 - j0));
+        }
+    }
+
+
+    /**
+     * @return the number of integration points through the thickness of the shells
+     */
+    public int getNumIntPoints() {
+        return mFam.getNumIntPoints();
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.myfirstapp;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Files kept alongside a family - the family index and the contour limits.
+ *
+ * Each is written next to the root member, or in the cache directory if
+ * that can't be written (see Family.getSideFiles), and starts with a header
+ * of its own magic number and version followed by the size and
+ * modification time of each member. A file is only read back if every
+ * member is unchanged, so a family that has been rewritten is worked out
+ * again. Files are written to a temporary file which then replaces the old
+ * one, so a reader never sees half a file. Failing to read or write is not
+ * an error - the caller just does the work again.
+ */
+public class SideFile {
+
+    private final static String TAG = "SIDE_FILE";
+
+    /** Reads the body of a side file, after the header */
+    public interface Reader {
+        boolean read(DataInputStream in) throws IOException;
+    }
+
+    /** Writes the body of a side file, after the header */
+    public interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+
+
+    /**
+     * Reads the first up to date side file of a family
+     * @param fam Family. The members must already have been found
+     * @param extension File extension
+     * @param magic Magic number of the file type
+     * @param version Version of the file type
+     * @param reader Reads the body. Returns false if it isn't valid
+     * @return true if a file was read
+     */
+    public static boolean load(Family fam, String extension, int magic, int version, Reader reader) {
+
+        File[] files = fam.getSideFiles(extension);
+
+        for(int i=0; i<files.length; i++) if(load(files[i], fam, magic, version, reader)) return true;
+
+        return false;
+    }
+
+
+    /**
+     * Reads a side file
+     * @param f File
+     * @param fam Family
+     * @param magic Magic number of the file type
+     * @param version Version of the file type
+     * @param reader Reads the body
+     * @return true if it was read and is for the family as it is now
+     */
+    private static boolean load(File f, Family fam, int magic, int version, Reader reader) {
+
+        if(!f.exists()) return false;
+
+        boolean ok = false;
+
+        try {
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+
+            try {
+                ok = readHeader(in, fam, magic, version) && reader.read(in);
+
+            } finally {
+                in.close();
+            }
+
+        } catch (IOException e) {
+
+            Log.d(TAG, "Failed to read " + f.getPath());
+
+            return false;
+        }
+
+        if(!ok) Log.d(TAG, "Out of date: " + f.getPath());
+
+        return ok;
+    }
+
+
+    /**
+     * Reads and checks the header
+     * @param in Input stream
+     * @param fam Family
+     * @param magic Magic number of the file type
+     * @param version Version of the file type
+     * @return true if it is the right type and version, and every member is unchanged
+     * @throws IOException
+     */
+    private static boolean readHeader(DataInputStream in, Family fam, int magic, int version) throws IOException {
+
+        if(in.readInt() != magic || in.readInt() != version) return false;
+
+        int numMembers = in.readInt();
+
+        if(numMembers != fam.getNumMembers()) return false;
+
+        for(int i=0; i<numMembers; i++) {
+
+            long size  = in.readLong();
+            long mtime = in.readLong();
+
+            if(size != fam.getMemberSize(i) || mtime != fam.getMemberTime(i)) return false;
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Writes a side file of a family, next to the root member or else in the cache directory
+     * @param fam Family
+     * @param extension File extension
+     * @param magic Magic number of the file type
+     * @param version Version of the file type
+     * @param writer Writes the body
+     * @return true if it was written
+     */
+    public static boolean save(Family fam, String extension, int magic, int version, Writer writer) {
+
+        File[] files = fam.getSideFiles(extension);
+
+        for(int i=0; i<files.length; i++) if(save(files[i], fam, magic, version, writer)) return true;
+
+        return false;
+    }
+
+
+    /**
+     * Writes a side file
+     * @param f File
+     * @param fam Family
+     * @param magic Magic number of the file type
+     * @param version Version of the file type
+     * @param writer Writes the body
+     * @return true if it was written
+     */
+    private static boolean save(File f, Family fam, int magic, int version, Writer writer) {
+
+        File tmp = new File(f.getPath() + ".tmp");
+
+        try {
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+
+            try {
+                writeHeader(out, fam, magic, version);
+
+                writer.write(out);
+
+            } finally {
+                out.close();
+            }
+
+            // Replace the old file in one go
+
+            if(!tmp.renameTo(f)) throw new IOException("Failed to rename " + tmp.getPath());
+
+            Log.d(TAG, "Written " + f.getPath());
+
+            return true;
+
+        } catch (IOException e) {
+
+            Log.d(TAG, "Failed to write " + f.getPath() + ": " + e.getMessage());
+
+            tmp.delete();
+
+            return false;
+        }
+    }
+
+
+    /**
+     * Writes the header
+     * @param out Output stream
+     * @param fam Family
+     * @param magic Magic number of the file type
+     * @param version Version of the file type
+     * @throws IOException
+     */
+    private static void writeHeader(DataOutputStream out, Family fam, int magic, int version) throws IOException {
+
+        out.writeInt(magic);
+        out.writeInt(version);
+
+        int numMembers = fam.getNumMembers();
+
+        out.writeInt(numMembers);
+
+        for(int i=0; i<numMembers; i++) {
+            out.writeLong(fam.getMemberSize(i));
+            out.writeLong(fam.getMemberTime(i));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.myfirstapp;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+public class Solid {
+
+    final static int L_TOP = 9;
+
+    private static int mNum;
+
+
+    /** Solid topology list */
+    private static IntBuffer top = null;
+
+    public static int getNum() {
+        return mNum;
+    }
+
+
+    /**
+     * Solid constructor
+     * @param fam Family
+     */
+    public Solid(Family fam) {
+        super();
+
+        mNum = fam.getNumSolids();
+
+        // Read the topology
+        readTopology(fam);
+    }
+
+
+    /** Read the solid topology
+     *
+     * @param fam Family
+     */
+    private void readTopology(Family fam) {
+
+        long addr = fam.getSolidTopAddr();
+
+// Slice of the geometry block, already in native byte order
+
+        ByteBuffer bb = fam.getGeometryData(addr, mNum * L_TOP);
+
+// View as IntBuffer
+
+        top = bb.asIntBuffer();
+    }
+
+
+    /**
+     * @return the solid topology list
+     */
+    public static IntBuffer getTop() {
+
+        top.position(0);
+
+        return top;
+    }
+
+}
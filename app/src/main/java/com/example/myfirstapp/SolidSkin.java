@@ -0,0 +1,373 @@
+package com.example.myfirstapp;
+
+import android.util.Log;
+
+import java.nio.IntBuffer;
+
+/**
+ * Exterior faces of the solid and thick shell parts.
+ *
+ * Only the skin of a solid part can be seen, so only faces that belong to
+ * one solid of the part are kept. A face shared by two solids of the same
+ * part is interior and appears twice. Every face is hashed on its part and
+ * sorted nodes, and the faces are split by hash into buckets, so that both
+ * copies of an interior face always land in the same bucket. The buckets
+ * are then matched in parallel, each with its own hash table.
+ *
+ * Thick shells are hexahedra with the same topology layout as solids, so
+ * they go through the same pass.
+ *
+ * The faces of each part are held as four nodes per face, numbered from 1
+ * as in the topology, in solid order and wound outwards.
+ */
+public class SolidSkin {
+
+    private final static String TAG = "SOLID_SKIN";
+
+    /** Nodes per face */
+    final static int NODES_PER_FACE = 4;
+
+    /** Faces per solid */
+    private final static int FACES_PER_SOLID = 6;
+
+    /** Nodes of each face of a solid, wound so the normal points out */
+    private final static int[][] FACES = { {0, 3, 2, 1},
+                                           {4, 5, 6, 7},
+                                           {0, 1, 5, 4},
+                                           {1, 2, 6, 5},
+                                           {2, 3, 7, 6},
+                                           {3, 0, 4, 7} };
+
+    /** Buckets per thread - more buckets than threads evens out the work */
+    private final static int BUCKETS_PER_THREAD = 4;
+
+    /** Number of exterior faces in each part */
+    private static int[] mNumFaces;
+
+    /** Exterior faces of each part */
+    private static IntBuffer[] mFaces;
+
+
+
+    /**
+     * SolidSkin constructor. The solids, thick shells and parts must already have been read
+     * @param fam Family
+     */
+    public SolidSkin(Family fam) {
+        super();
+
+        long t0 = System.currentTimeMillis();
+
+        int numParts = fam.getNumParts();
+
+        mNumFaces = new int[numParts];
+        mFaces    = new IntBuffer[numParts];
+
+        if(Solid.getNum()  > 0) createSkins(Element.SOLID,  Solid.getTop(),  Solid.getNum(),  numParts);
+        if(TShell.getNum() > 0) createSkins(Element.TSHELL, TShell.getTop(), TShell.getNum(), numParts);
+
+        Log.d(TAG, "Skin of " + Integer.toString(Solid.getNum()) + " solids and " +
+                   Integer.toString(TShell.getNum()) + " thick shells in " +
+                   Long.toString(System.currentTimeMillis() - t0) + "ms");
+    }
+
+
+    /**
+     * Finds the exterior faces of every part of one element type
+     * @param type Element type - SOLID or TSHELL
+     * @param top Topology
+     * @param nsolids Number of elements
+     * @param numParts Number of parts
+     */
+    private void createSkins(final int type, final IntBuffer top, final int nsolids, int numParts) {
+
+        final int nfaces = nsolids * FACES_PER_SOLID;
+
+        final int nchunks  = Parallel.getNumThreads();
+        final int nbuckets = nchunks * BUCKETS_PER_THREAD;
+
+        // Count the faces going into each bucket, in parallel over chunks of solids
+
+        final int[][] count = new int[nchunks][nbuckets];
+
+        Parallel.run(nchunks, new Parallel.RangeTask() {
+            public void run(int first, int last) {
+
+                int[] key = new int[NODES_PER_FACE + 1];
+
+                for(int c=first; c<last; c++) {
+
+                    int f0 = getFirstFace(c, nchunks, nsolids);
+                    int f1 = getFirstFace(c + 1, nchunks, nsolids);
+
+                    for(int f=f0; f<f1; f++) {
+                        count[c][getBucket(getKey(top, f, key), nbuckets)]++;
+                    }
+                }
+            }
+        });
+
+        // Where each chunk starts writing in each bucket
+
+        final int[] bucketStart = new int[nbuckets + 1];
+        final int[][] offset    = new int[nchunks][nbuckets];
+
+        int pos = 0;
+
+        for(int b=0; b<nbuckets; b++) {
+
+            bucketStart[b] = pos;
+
+            for(int c=0; c<nchunks; c++) {
+                offset[c][b] = pos;
+                pos += count[c][b];
+            }
+        }
+
+        bucketStart[nbuckets] = pos;
+
+        // Put the faces in their buckets
+
+        final int[] order = new int[nfaces];
+
+        Parallel.run(nchunks, new Parallel.RangeTask() {
+            public void run(int first, int last) {
+
+                int[] key = new int[NODES_PER_FACE + 1];
+
+                for(int c=first; c<last; c++) {
+
+                    int f0 = getFirstFace(c, nchunks, nsolids);
+                    int f1 = getFirstFace(c + 1, nchunks, nsolids);
+
+                    for(int f=f0; f<f1; f++) {
+                        order[offset[c][getBucket(getKey(top, f, key), nbuckets)]++] = f;
+                    }
+                }
+            }
+        });
+
+        // Match the faces in each bucket. Each face is only in one bucket, so
+        // the buckets never write to the same entries
+
+        final boolean[] interior = new boolean[nfaces];
+
+        Parallel.run(nbuckets, new Parallel.RangeTask() {
+            public void run(int first, int last) {
+
+                for(int b=first; b<last; b++) {
+                    matchFaces(top, order, bucketStart[b], bucketStart[b+1], interior);
+                }
+            }
+        });
+
+        // Collect the exterior faces of each part
+
+        Parallel.run(numParts, new Parallel.RangeTask() {
+            public void run(int first, int last) {
+
+                for(int i=first; i<last; i++) {
+                    if(Part.getType(i) == type) collectFaces(top, i, interior);
+                }
+            }
+        });
+    }
+
+
+    /**
+     * @param chunk Chunk
+     * @param nchunks Number of chunks
+     * @param nsolids Number of solids
+     * @return the first face in <chunk>. Chunks are whole solids
+     */
+    private static int getFirstFace(int chunk, int nchunks, int nsolids) {
+        return (int)((long)nsolids * chunk / nchunks) * FACES_PER_SOLID;
+    }
+
+
+    /**
+     * Gets the part and sorted nodes of a face, and its hash
+     * @param top Solid or thick shell topology
+     * @param face Face (solid * FACES_PER_SOLID + face in solid)
+     * @param key Part then sorted nodes - filled in
+     * @return the hash of the key
+     */
+    private static int getKey(IntBuffer top, int face, int[] key) {
+
+        int base = Solid.L_TOP * (face / FACES_PER_SOLID);
+
+        int[] lnodes = FACES[face % FACES_PER_SOLID];
+
+        key[0] = top.get(base + Solid.L_TOP - 1);
+
+        // Insertion sort of four nodes
+
+        for(int j=0; j<NODES_PER_FACE; j++) {
+
+            int node = top.get(base + lnodes[j]);
+
+            int k = j;
+
+            while(k > 0 && key[k] > node) {
+                key[k+1] = key[k];
+                k--;
+            }
+
+            key[k+1] = node;
+        }
+
+        int h = key[0];
+
+        for(int j=1; j<=NODES_PER_FACE; j++) h = h * 0x9E3779B1 + key[j];
+
+        return h ^ (h >>> 16);
+    }
+
+
+    /**
+     * @param hash Face hash
+     * @param nbuckets Number of buckets
+     * @return the bucket for a face - uses different bits from the hash tables
+     */
+    private static int getBucket(int hash, int nbuckets) {
+        return ((hash >>> 8) & 0x7fffffff) % nbuckets;
+    }
+
+
+    /**
+     * Marks the faces that appear more than once in a bucket as interior.
+     * Degenerate faces, with fewer than three distinct nodes, are also
+     * treated as interior
+     * @param top Solid topology
+     * @param order Faces, by bucket
+     * @param first First face in the bucket
+     * @param last Last face in the bucket + 1
+     * @param interior Interior flags - set for interior faces
+     */
+    private static void matchFaces(IntBuffer top, int[] order, int first, int last, boolean[] interior) {
+
+        int n = last - first;
+
+        if(n == 0) return;
+
+        // Open addressing table, at most half full
+
+        int size = Integer.highestOneBit(Math.max(1, 2 * n - 1)) << 1;
+        int mask = size - 1;
+
+        int[] table = new int[size];
+
+        for(int i=0; i<size; i++) table[i] = -1;
+
+        int[] key   = new int[NODES_PER_FACE + 1];
+        int[] other = new int[NODES_PER_FACE + 1];
+
+        for(int i=first; i<last; i++) {
+
+            int f = order[i];
+
+            int slot = getKey(top, f, key) & mask;
+
+            // Distinct nodes - key is sorted
+
+            int distinct = 1;
+
+            for(int j=2; j<=NODES_PER_FACE; j++) if(key[j] != key[j-1]) distinct++;
+
+            if(distinct < 3) {
+                interior[f] = true;
+                continue;
+            }
+
+            // Look for the same face, or an empty slot
+
+            while(table[slot] >= 0) {
+
+                int g = table[slot];
+
+                getKey(top, g, other);
+
+                boolean same = true;
+
+                for(int j=0; j<=NODES_PER_FACE; j++) if(key[j] != other[j]) same = false;
+
+                if(same) {
+                    interior[f] = true;
+                    interior[g] = true;
+                    break;
+                }
+
+                slot = (slot + 1) & mask;
+            }
+
+            if(table[slot] < 0) table[slot] = f;
+        }
+    }
+
+
+    /**
+     * Collects the exterior faces of a part
+     * @param top Solid topology
+     * @param ipart Internal part
+     * @param interior Interior flags
+     */
+    private static void collectFaces(IntBuffer top, int ipart, boolean[] interior) {
+
+        IntBuffer els = Part.getElsInPart(ipart);
+
+        int nels = els.limit();
+
+        int n = 0;
+
+        for(int i=0; i<nels; i++) {
+
+            int el = els.get(i);
+
+            for(int k=0; k<FACES_PER_SOLID; k++) {
+                if(!interior[el * FACES_PER_SOLID + k]) n++;
+            }
+        }
+
+        int[] faces = new int[n * NODES_PER_FACE];
+
+        int pos = 0;
+
+        for(int i=0; i<nels; i++) {
+
+            int el = els.get(i);
+
+            int base = Solid.L_TOP * el;
+
+            for(int k=0; k<FACES_PER_SOLID; k++) {
+
+                if(interior[el * FACES_PER_SOLID + k]) continue;
+
+                for(int j=0; j<NODES_PER_FACE; j++) faces[pos++] = top.get(base + FACES[k][j]);
+            }
+        }
+
+        mNumFaces[ipart] = n;
+        mFaces[ipart]    = IntBuffer.wrap(faces);
+    }
+
+
+    /**
+     * @param i, internal part
+     * @return the number of exterior faces in internal part i
+     */
+    public static int getNumFaces(int i) {
+        return mNumFaces[i];
+    }
+
+
+    /**
+     * @param i, internal part
+     * @return the exterior faces of internal part i, four nodes per face, or null if it isn't a solid part
+     */
+    public static IntBuffer getFaces(int i) {
+
+        if(mFaces[i] != null) mFaces[i].position(0);
+
+        return mFaces[i];
+    }
+}
@@ -5,21 +5,30 @@ import android.util.Log;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
-import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class State {
 
     private final static String TAG = "STATE";
 
-    /** Contour colour */
-    private static float[] mRGB = new float[3];
+    /** Time value marking the end of the states */
+    private final static float END_OF_STATES = -999999.0f;
+
+    /** Nodal data blocks */
+    final static int COORDINATES   = 0;
+    final static int VELOCITIES    = 1;
+    final static int ACCELERATIONS = 2;
+    final static int TEMPERATURES  = 3;
 
-    /** Coords as float buffer */
-    private static FloatBuffer mCoords;
+    final static int NUM_NODAL_BLOCKS = 4;
 
-    /** Coords as byte buffer */
-    private static ByteBuffer mBB;
+    /** Contour colour */
+    private static float[] mRGB = new float[3];
 
     int     mNum;
     int     mMember;
@@ -34,7 +43,7 @@ public class State {
      * @param istate State number
      * @param imember File member
      * @param addr Address in file member
-     * @param time State time
+     * @param time State time, or NaN to read it when first needed
      */
     public State(Family fam, int istate, int imember, long addr, float time) {
         super();
@@ -56,158 +65,281 @@ public class State {
 
 
     /**
-     * Scans for states in the family, returning the states in an array
+     * Scans for states in the family, returning the states in an array.
+     *
+     * States have a fixed length, so the number in each member is predicted
+     * from the member size and only the first and last state times are
+     * checked. Members are scanned in parallel. If a member can't be
+     * scanned the states stop at the end of the member before it, as the
+     * later ones can't be numbered.
      * @param fam Family
+     * @param complete Set to whether every member was scanned - filled in
      * @return Array of states
      */
-    public static State[] scanStates(Family fam) {
+    public static State[] scanStates(Family fam, boolean[] complete) {
 
         ArrayList<State> stateList = new ArrayList<State>();
 
+        final Family ffam = fam;
+
         int n = fam.getNumMembers();
 
-        int istate = 1;
+        int nthreads = Math.max(1, Math.min(n, Runtime.getRuntime().availableProcessors()));
+
+        ExecutorService pool = Executors.newFixedThreadPool(nthreads);
+
+        // Scan each member on the pool
+
+        ArrayList<Future<long[]>> results = new ArrayList<Future<long[]>>();
 
         for(int imember=0; imember<n; imember++) {
 
-            // Open this member (closing the current one as well)
-            fam.openMember(imember);
+            final int im = imember;
+
+            results.add(pool.submit(new Callable<long[]>() {
+                public long[] call() throws IOException {
+                    return scanMember(ffam, im);
+                }
+            }));
+        }
+
+        pool.shutdown();
+
+        // Declare states in member order
 
-            long addr = 0;
-            if(imember == 0) addr = fam.getFirstStateAddr();
+        int istate = 1;
+
+        complete[0] = false;
 
+        for(int imember=0; imember<n; imember++) {
 
             try {
-                float time = 0.0f;
+                long[] addrs = results.get(imember).get();
+
+                for(int i=0; i<addrs.length; i++) {
+                    stateList.add(new State(fam, istate++, imember, addrs[i], Float.NaN));
+                }
+
+            } catch (InterruptedException e) {
+
+                Log.d(TAG, "Interrupted in <scanStates>");
+
+                Thread.currentThread().interrupt();
+                break;
+
+            } catch (ExecutionException e) {
 
-                while(time != -999999.0f) {
+                Log.d(TAG, "Failed to scan member " + Integer.toString(imember) + " in <scanStates>");
 
-                    // Read time value
+                e.printStackTrace();
+                break;
+            }
+
+            if(imember == n - 1) complete[0] = true;
+        }
+
+        if(!complete[0]) pool.shutdownNow();
 
-                    FileChannel ch = fam.getFileChannel();
+        // Return state list as array
 
-                    int length = 4;
+        State[] states = new State[stateList.size()];
 
-                    // ByteBuffer
+        stateList.toArray(states);
 
-                    ByteBuffer bb = ByteBuffer.allocateDirect( length );
+        return states;
 
-                    // Byte order
+    }
 
-                    bb.order(fam.getEndianess());
 
-                    // View as FloatBuffer
+    /**
+     * Finds the addresses of the states in a family member
+     * @param fam Family
+     * @param imember File member
+     * @return Array of state addresses
+     * @throws IOException
+     */
+    private static long[] scanMember(Family fam, int imember) throws IOException {
 
-                    FloatBuffer state = bb.asFloatBuffer();
+        long first = 0;
+        if(imember == 0) first = fam.getFirstStateAddr();
 
+        long stride = fam.getStateLength() + 1;  // + 1 for time
 
-                    // Position to start of state data
+        long words = fam.getMemberSize(imember) / 4;
 
-                    ch.position(addr*4);  // * 4 for bytes
+        // Number of complete states that fit in the member
 
-                    // Read time into byte buffer
+        int nfit = (int)Math.max(0, (words - first) / stride);
 
-                    ch.read( bb );
+        // Check the boundary words. The first and last states must have
+        // valid times that don't go backwards
 
-                    time = state.get(0);
+        if(nfit > 0) {
 
-                    if(time != -999999.0f) stateList.add(new State(fam, istate++, imember, addr, time));
+            float t0 = readTime(fam, imember, first);
+            float t1 = readTime(fam, imember, first + (nfit - 1) * stride);
 
-                    addr += fam.getStateLength() + 1;
-                }
+            if(t0 != END_OF_STATES && t1 != END_OF_STATES && t1 >= t0) {
 
-            } catch (IOException e) {
+                long[] addrs = new long[nfit];
 
-                Log.d(TAG, "Failed to read state time in <scanStates>");
+                for(int i=0; i<nfit; i++) addrs[i] = first + i * stride;
 
-                // TODO Auto-generated catch block
-                e.printStackTrace();
+                return addrs;
             }
         }
 
-        // Return state list as array
+        // Member doesn't look as expected (e.g. end of states marker part way
+        // through) so walk it state by state
 
-        State[] states = new State[stateList.size()];
+        Log.d(TAG, "Walking states in member " + Integer.toString(imember));
 
-        stateList.toArray(states);
+        ArrayList<Long> addrs = new ArrayList<Long>();
 
+        long addr = first;
 
-// Now allocate objects
+        while(addr + stride <= words && readTime(fam, imember, addr) != END_OF_STATES) {
 
-        allocateStateObjects();
+            addrs.add(addr);
 
-        return states;
+            addr += stride;
+        }
+
+        long[] list = new long[addrs.size()];
+
+        for(int i=0; i<list.length; i++) list[i] = addrs.get(i);
 
+        return list;
     }
 
 
+    /**
+     * Reads the time word at <addr> in a family member
+     * @param fam Family
+     * @param imember File member
+     * @param addr Address in file member
+     * @return State time
+     * @throws IOException
+     */
+    private static float readTime(Family fam, int imember, long addr) throws IOException {
+
+        ByteBuffer bb = fam.getMemberData(imember, addr, 1);
+
+        return bb.getFloat(0);
+    }
+
+
+    /**
+     * @return the state time, read from the member on first use
+     */
     public float getTime() {
+
+        if(Float.isNaN(mTime)) {
+
+            try {
+                mTime = readTime(mFam, mMember, mAddr);
+
+            } catch (IOException e) {
+
+                Log.d(TAG, "Failed to read state time...");
+
+                e.printStackTrace();
+            }
+        }
+
         return mTime;
     }
 
 
 
-    // TODO -> Reuse objects - declare them as class members - don't keep allocating them -> GC...
-    // Allocate them just once - see MyRenderer
-
     /**
-     * One time allocation of objects/arrays for getting state coords.
-     * constant allocation leads to slow down because of GC
+     * @return the coordinates for this state in native byte order, from the
+     *         family's state cache
      */
-    private static void allocateStateObjects() {
+    public FloatBuffer getStateCoords() {
+        return mFam.getStateCache().getStateCoords(this);
+    }
 
-        // Byte buffer for coords
-        int length = mFam.getNumNodes() * Node.L_COR * 4; // * 4 for bytes
 
-        mBB = ByteBuffer.allocateDirect( length );
+    /**
+     * @return the coordinate data for this state, in the byte order of the file.
+     *         This is a view of the member mapping, so nothing is copied
+     */
+    public ByteBuffer getStateCoordData() {
+        return getNodalBlockData(COORDINATES);
+    }
 
-        mBB.order(mFam.getEndianess());
 
+    /**
+     * Gets one block of nodal data for this state, without reading any of the
+     * rest of the state. Coordinates come from the family's state cache
+     * @param block COORDINATES, VELOCITIES, ACCELERATIONS or TEMPERATURES
+     * @return the data in native byte order, Family.getNodalWidth() values per
+     *         node, or null if the states don't have the block
+     */
+    public FloatBuffer getNodalData(int block) {
 
-        // View as FloatBuffer
+        if(block == COORDINATES) return getStateCoords();
 
-        mCoords = mBB.asFloatBuffer();
+        ByteBuffer data = getNodalBlockData(block);
 
+        return data == null ? null : mFam.toNativeOrder(data).asFloatBuffer();
     }
 
 
-    public FloatBuffer getStateCoords() {
-
-        mCoords.rewind();
-        mBB.rewind();
+    /**
+     * @param block COORDINATES, VELOCITIES, ACCELERATIONS or TEMPERATURES
+     * @return one block of nodal data for this state, in the byte order of the file,
+     *         or null if the states don't have the block. This is a view of the
+     *         member mapping, so nothing is copied
+     */
+    public ByteBuffer getNodalBlockData(int block) {
 
-        mCoords.position(0);
-        mBB.position(0);
+        int offset = mFam.getNodalOffset(block);
 
-        // Open the family member for this state
+        if(offset < 0) return null;
 
-        mFam.openMember(mMember);
+        ByteBuffer bb = null;
 
-        // Now read coordinates
         try {
-// Position to start of coordinate data
+            bb = mFam.getMemberData(mMember, mAddr + offset, mFam.getNumNodes() * mFam.getNodalWidth(block));
 
-            int nglbv = mFam.getNumGlblVariables();
+        } catch (IOException e) {
 
-            long addr =   mAddr
-                    + 1       // Time
-                    + nglbv;  // Global variables
+            Log.d(TAG, "Failed to get state nodal data...");
 
-            mFam.getFileChannel().position(addr*4);  // * 4 for bytes
+            e.printStackTrace();
+        }
+
+        return bb;
+    }
 
-// Read coordinates into byte buffer
 
-            mFam.getFileChannel().read( mBB );
+    /**
+     * @return the shell results for this state, in the byte order of the file,
+     *         Family.getNumShellVariables() values per shell, or null if the
+     *         states don't have any. This is a view of the member mapping, so
+     *         nothing is read until the values are used
+     */
+    public ByteBuffer getShellBlockData() {
+
+        int offset = mFam.getShellDataOffset();
+
+        if(offset < 0) return null;
+
+        ByteBuffer bb = null;
+
+        try {
+            bb = mFam.getMemberData(mMember, mAddr + offset, mFam.getNumShells() * mFam.getNumShellVariables());
 
         } catch (IOException e) {
 
-            Log.d(TAG, "Failed to get state coordinates...");
+            Log.d(TAG, "Failed to get state shell data...");
 
-            // TODO Auto-generated catch block
             e.printStackTrace();
         }
 
-        return mCoords;
+        return bb;
     }
 
 
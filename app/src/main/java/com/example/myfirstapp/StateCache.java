@@ -0,0 +1,293 @@
+package com.example.myfirstapp;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of state coordinates, keyed by state number.
+ *
+ * Each entry is a copy of a state's coordinates in a direct buffer, in
+ * native byte order. The
+ * number of entries is limited by a byte budget. Evicted buffers are reused
+ * for new entries, so once the cache is full no more memory is allocated.
+ * One state can be pinned so it isn't evicted while it is being used.
+ */
+public class StateCache {
+
+    private final static String TAG = "STATE_CACHE";
+
+    /** Minimum number of entries, whatever the budget */
+    private final static int MIN_ENTRIES = 2;
+
+    /** A cached state */
+    private static class Entry {
+
+        ByteBuffer  mData;
+        FloatBuffer mCoords;
+
+        Entry(ByteBuffer data) {
+            mData   = data;
+            mCoords = data.asFloatBuffer();
+        }
+    }
+
+    /** Size of an entry (in bytes) */
+    private int mEntryBytes;
+
+    /** Family the states belong to */
+    private Family mFam;
+
+    /** Maximum number of entries */
+    private int mMaxEntries;
+
+    /** Number of entries allocated */
+    private int mNumAllocated;
+
+    /** Entries, least recently used first */
+    private LinkedHashMap<Integer, Entry> mEntries;
+
+    /** Evicted entries that can be reused */
+    private ArrayList<Entry> mFree = new ArrayList<Entry>();
+
+    /** State that mustn't be evicted */
+    private int mPinned = -1;
+
+    /** Statistics */
+    private long mHits;
+    private long mMisses;
+
+
+
+    /**
+     * StateCache constructor
+     * @param fam Family
+     * @param budget Memory budget (in bytes)
+     */
+    public StateCache(Family fam, long budget) {
+        super();
+
+        mEntryBytes = Math.max(1, fam.getNumNodes() * Node.L_COR * 4);  // * 4 for bytes
+
+        mFam = fam;
+
+        // At least two entries - the state being shown and the next one
+
+        mMaxEntries = (int)Math.min(fam.getNumOfStates(), Math.max(MIN_ENTRIES, budget / mEntryBytes));
+
+        mEntries = new LinkedHashMap<Integer, Entry>(16, 0.75f, true);
+
+        Log.d(TAG, "Budget " + Long.toString(budget / (1024 * 1024)) + "MB, " + Integer.toString(mMaxEntries) + " states");
+    }
+
+
+    /**
+     * Gets the coordinates of a state, reading them into the cache if needed
+     * @param state State
+     * @return the coordinates, or null if they couldn't be read
+     */
+    public FloatBuffer getStateCoords(State state) {
+
+        Entry entry;
+
+        synchronized(this) {
+
+            entry = mEntries.get(state.mNum);
+
+            if(entry != null) {
+
+                mHits++;
+
+                entry.mCoords.position(0);
+
+                return entry.mCoords;
+            }
+
+            mMisses++;
+        }
+
+        entry = loadEntry(state);
+
+        if(entry != null) {
+
+            entry.mCoords.position(0);
+
+            return entry.mCoords;
+        }
+
+        // No room in the cache - read it directly
+
+        ByteBuffer data = state.getStateCoordData();
+
+        return data == null ? null : mFam.toNativeOrder(data).asFloatBuffer();
+    }
+
+
+    /**
+     * Reads a state into the cache if it isn't already there
+     * @param state State
+     * @return true if the state is in the cache
+     */
+    public boolean load(State state) {
+        return loadEntry(state) != null;
+    }
+
+
+    /**
+     * Reads a state into the cache if it isn't already there
+     * @param state State
+     * @return the entry, or null if there is no room or it couldn't be read
+     */
+    private Entry loadEntry(State state) {
+
+        Entry entry;
+
+        synchronized(this) {
+
+            entry = mEntries.get(state.mNum);
+
+            if(entry != null) return entry;
+
+            entry = getFreeEntry();
+
+            if(entry == null) return null;
+        }
+
+        // Copy from the member mapping outside the lock, putting it in native
+        // byte order - this is where the disk is read
+
+        ByteBuffer data = state.getStateCoordData();
+
+        if(data != null) {
+
+            entry.mData.clear();
+
+            if(mFam.getEswap() != 0) Family.swapCopy(data, entry.mData);
+            else                     entry.mData.put(data);
+        }
+
+        synchronized(this) {
+
+            // Give the entry back if the read failed or another thread got there first
+
+            Entry loaded = mEntries.get(state.mNum);
+
+            if(data == null || loaded != null) {
+
+                mFree.add(entry);
+
+                return loaded;
+            }
+
+            mEntries.put(state.mNum, entry);
+        }
+
+        return entry;
+    }
+
+
+    /**
+     * @return an unused entry, evicting the least recently used state if
+     *         needed, or null if there isn't one
+     */
+    private Entry getFreeEntry() {
+
+        if(!mFree.isEmpty()) return mFree.remove(mFree.size() - 1);
+
+        if(mNumAllocated < mMaxEntries) {
+
+            try {
+                mNumAllocated++;
+
+                return new Entry(ByteBuffer.allocateDirect(mEntryBytes).order(ByteOrder.nativeOrder()));
+
+            } catch (OutOfMemoryError e) {
+
+                // Budget was too optimistic - stay at this size
+
+                mNumAllocated--;
+                mMaxEntries = mNumAllocated;
+
+                Log.d(TAG, "Out of memory, limited to " + Integer.toString(mMaxEntries) + " states");
+            }
+        }
+
+        // Evict least recently used
+
+        Iterator<Map.Entry<Integer, Entry>> it = mEntries.entrySet().iterator();
+
+        while(it.hasNext()) {
+
+            Map.Entry<Integer, Entry> e = it.next();
+
+            if(e.getKey() != mPinned) {
+
+                it.remove();
+
+                return e.getValue();
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * @param istate State number
+     * @return true if state <istate> is in the cache. Doesn't count as a use
+     */
+    public synchronized boolean contains(int istate) {
+        return mEntries.containsKey(istate);
+    }
+
+
+    /**
+     * Stops state <istate> being evicted, unpinning the previous one
+     * @param istate State number
+     */
+    public synchronized void pin(int istate) {
+        mPinned = istate;
+    }
+
+
+    /**
+     * @return the maximum number of states held
+     */
+    public int getCapacity() {
+        return mMaxEntries;
+    }
+
+
+    /**
+     * @return the number of cache hits
+     */
+    public synchronized long getHits() {
+        return mHits;
+    }
+
+
+    /**
+     * @return the number of cache misses
+     */
+    public synchronized long getMisses() {
+        return mMisses;
+    }
+
+
+    /**
+     * Logs the hit/miss counts
+     */
+    public synchronized void logStats() {
+
+        long total = mHits + mMisses;
+
+        Log.d(TAG, "Hits " + Long.toString(mHits) + ", misses " + Long.toString(mMisses) +
+                   (total > 0 ? ", hit rate " + Long.toString(100 * mHits / total) + "%" : ""));
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.myfirstapp;
+
+import android.util.Log;
+
+/**
+ * Reads state coordinates ahead of the renderer on a background thread.
+ *
+ * The renderer tells the prefetcher which frame it is showing and which way
+ * it is stepping. The prefetcher then reads the next few frames into the
+ * family's state cache, so the disk reads (page faults on the member
+ * mappings) are off the GL thread. Frame 0 is the undeformed geometry and
+ * frame i > 0 is state i, as in MyRenderer.
+ */
+public class StatePrefetcher implements Runnable {
+
+    private final static String TAG = "PREFETCH";
+
+    /** Maximum number of frames to read ahead */
+    private final static int MAX_AHEAD = 8;
+
+    /** Family to read */
+    private Family mFam;
+
+    /** Cache the states are read into */
+    private StateCache mCache;
+
+    /** Number of frames - the undeformed frame 0, then one per state */
+    private int mNumFrames;
+
+    /** Number of frames to read ahead */
+    private int mAhead;
+
+    /** Frame being shown by the renderer */
+    private int mCurrent = 0;
+
+    /** Direction the renderer is stepping in (+1 or -1) */
+    private int mDirection = 1;
+
+    /** Set to stop the thread */
+    private boolean mStopped = false;
+
+    /** Background thread */
+    private Thread mThread;
+
+
+
+    /**
+     * StatePrefetcher constructor
+     * @param fam Family
+     */
+    public StatePrefetcher(Family fam) {
+        super();
+
+        mFam = fam;
+
+        mCache = fam.getStateCache();
+
+        mNumFrames = fam.getNumOfStates() + 1;
+
+        // Read ahead as far as the cache allows, keeping room for the frame being shown
+
+        mAhead = Math.max(0, Math.min(MAX_AHEAD, mCache.getCapacity() - 1));
+
+        mThread = new Thread(this, TAG);
+        mThread.setDaemon(true);
+        mThread.setPriority(Thread.MIN_PRIORITY);
+        mThread.start();
+    }
+
+
+    /**
+     * Tells the prefetcher which frame is being shown and the playback direction.
+     * The frame is pinned in the cache until the next request.
+     * @param frame Frame being shown
+     * @param direction +1 stepping forwards, -1 stepping backwards
+     */
+    public synchronized void request(int frame, int direction) {
+
+        mCurrent   = frame;
+        mDirection = direction < 0 ? -1 : 1;
+
+        mCache.pin(frame);
+
+        notifyAll();
+    }
+
+
+    /**
+     * @param frame Frame
+     * @return true if the coordinates for <frame> are ready
+     */
+    public boolean isLoaded(int frame) {
+        return frame == 0 || mCache.contains(frame);
+    }
+
+
+    /**
+     * Finds the first frame after <frame> in <direction> that is ready,
+     * looking as far ahead as the prefetcher reads.
+     * @param frame Frame
+     * @param direction +1 stepping forwards, -1 stepping backwards
+     * @return the frame, or -1 if none are ready
+     */
+    public int nextLoaded(int frame, int direction) {
+
+        for(int i=1; i<=mAhead; i++) {
+
+            int f = wrap(frame + i * direction);
+
+            if(isLoaded(f)) return f;
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * Stops the background thread
+     */
+    public synchronized void shutdown() {
+
+        mStopped = true;
+
+        notifyAll();
+    }
+
+
+    @Override
+    public void run() {
+
+        while(true) {
+
+            int frame;
+
+            // Wait for a frame that needs loading
+
+            synchronized(this) {
+
+                while(!mStopped && nextToLoad() < 0) {
+
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+
+                if(mStopped) return;
+
+                frame = nextToLoad();
+            }
+
+            // Read into the cache. This is where the disk is read
+
+            if(!mCache.load(mFam.getStateFromID(frame))) {
+
+                Log.d(TAG, "Failed to prefetch state " + Integer.toString(frame));
+
+                // Don't keep retrying - wait for the next request
+
+                synchronized(this) {
+
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * @return the nearest frame ahead of the current one that isn't loaded, or -1
+     */
+    private int nextToLoad() {
+
+        // Nothing to read if there is only the undeformed frame
+
+        if(mNumFrames < 2) return -1;
+
+        for(int i=1; i<=mAhead; i++) {
+
+            int f = wrap(mCurrent + i * mDirection);
+
+            if(f != 0 && f != mCurrent && !mCache.contains(f)) return f;
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * @param frame Frame
+     * @return <frame> wrapped into the range of frames
+     */
+    private int wrap(int frame) {
+
+        if(frame >= mNumFrames) frame -= mNumFrames;
+        if(frame < 0)           frame += mNumFrames;
+
+        return frame;
+    }
+}
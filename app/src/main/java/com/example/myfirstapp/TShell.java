@@ -0,0 +1,63 @@
+package com.example.myfirstapp;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+public class TShell {
+
+    final static int L_TOP = 9;
+
+    private static int mNum;
+
+
+    /** Thick shell topology list */
+    private static IntBuffer top = null;
+
+    public static int getNum() {
+        return mNum;
+    }
+
+
+    /**
+     * Thick shell constructor
+     * @param fam Family
+     */
+    public TShell(Family fam) {
+        super();
+
+        mNum = fam.getNumThickShells();
+
+        // Read the topology
+        readTopology(fam);
+    }
+
+
+    /** Read the thick shell topology
+     *
+     * @param fam Family
+     */
+    private void readTopology(Family fam) {
+
+        long addr = fam.getTShellTopAddr();
+
+// Slice of the geometry block, already in native byte order
+
+        ByteBuffer bb = fam.getGeometryData(addr, mNum * L_TOP);
+
+// View as IntBuffer
+
+        top = bb.asIntBuffer();
+    }
+
+
+    /**
+     * @return the thick shell topology list
+     */
+    public static IntBuffer getTop() {
+
+        top.position(0);
+
+        return top;
+    }
+
+}
@@ -0,0 +1,278 @@
+package com.example.myfirstapp;
+
+import android.util.Log;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Builds the vertex data for a batch of meshes - gathering one value per
+ * vertex from the nodal values, and the box around each mesh's vertices.
+ *
+ * There are two kernels that give the same results, bit for bit. The native
+ * one works straight on the direct buffers. The Java one gathers into an
+ * array and works out the boxes from that, with plain loops over arrays and
+ * no branches, which the JIT can unroll and vectorize where the hardware
+ * allows. Which is faster depends on the device, so it can be switched
+ * while running and compared in the frame stats. The Java kernel is also
+ * the one used where the native library isn't there, such as on a desktop
+ * JVM.
+ */
+public class VertexBuilder {
+
+    private final static String TAG = "VERTEX_BUILDER";
+
+    /** Kernels */
+    final static int NATIVE = 0;
+    final static int JAVA   = 1;
+
+    private final static String[] KERNEL_NAMES = { "Native", "Java" };
+
+    private final static int L_COR = 3;
+
+    /** Set if the native library loaded */
+    private static boolean sHaveNative = false;
+
+    static {
+        try {
+            System.loadLibrary("myUtils");
+
+            sHaveNative = true;
+
+        } catch (UnsatisfiedLinkError e) {
+            Log.w(TAG, "Native library not found - vertices are built in Java");
+        }
+    }
+
+
+    /*
+    ** Native function to populate vertex data for a batch - one vertex per node
+    */
+    private native int populateVertexData(int numVertices,
+                                          FloatBuffer values,
+                                          IntBuffer nodes,
+                                          FloatBuffer vertexData);
+
+    /*
+    ** Native function to get the box around a mesh's vertex positions
+    */
+    private native int getVertexBounds(int first,
+                                       int numVertices,
+                                       FloatBuffer vertexData,
+                                       FloatBuffer bounds,
+                                       int offset);
+
+
+    /** Kernel in use */
+    private volatile int mKernel;
+
+    /** Java kernel - node of each vertex, and the vertex data gathered */
+    private int[]   mNodes  = new int[0];
+    private float[] mValues = new float[0];
+
+    /** Buffer the vertex data in mValues was last copied to */
+    private FloatBuffer mLastData;
+
+    /** Java kernel - box around a mesh */
+    private float[] mBox = new float[Frustum.L_BOUNDS];
+
+
+
+    /**
+     * VertexBuilder constructor, using the native kernel if there is one
+     */
+    public VertexBuilder() {
+        super();
+
+        mKernel = sHaveNative ? NATIVE : JAVA;
+    }
+
+
+    /**
+     * @return true if the native kernel can be used
+     */
+    public static boolean haveNative() {
+        return sHaveNative;
+    }
+
+
+    /**
+     * Chooses the kernel. The native one is only used if the library loaded
+     * @param kernel NATIVE or JAVA
+     */
+    public void setKernel(int kernel) {
+
+        mKernel = (kernel == NATIVE && sHaveNative) ? NATIVE : JAVA;
+    }
+
+
+    /**
+     * @return the kernel in use - NATIVE or JAVA
+     */
+    public int getKernel() {
+        return mKernel;
+    }
+
+
+    /**
+     * @return the name of the kernel in use, for display
+     */
+    public String getKernelName() {
+        return KERNEL_NAMES[mKernel];
+    }
+
+
+    /**
+     * Fills the vertex data for a batch with the values of each vertex's node
+     * @param numVertices Number of vertices
+     * @param values Nodal values, 3 per node - coordinates or normals
+     * @param nodes Node of each vertex
+     * @param vertexData Vertex data to fill, 3 values per vertex
+     */
+    public void populate(int numVertices, FloatBuffer values, IntBuffer nodes, FloatBuffer vertexData) {
+
+        if(mKernel == NATIVE) {
+            populateVertexData(numVertices, values, nodes, vertexData);
+            mLastData = null;
+            return;
+        }
+
+        int nv = L_COR * numVertices;
+
+        if(mNodes.length  < numVertices) mNodes  = new int[numVertices];
+        if(mValues.length < nv)          mValues = new float[nv];
+
+        // Bulk copies in and out, so the loop only touches arrays
+
+        nodes.position(0);
+        nodes.get(mNodes, 0, numVertices);
+        nodes.position(0);
+
+        gather(numVertices, values, mNodes, mValues);
+
+        vertexData.position(0);
+        vertexData.put(mValues, 0, nv);
+        vertexData.position(0);
+
+        mLastData = vertexData;
+    }
+
+
+    /**
+     * Fills the vertex data for a batch with the value of each vertex's node,
+     * for contouring. There is only the Java kernel for single values
+     * @param numVertices Number of vertices
+     * @param values Nodal values, 1 per node
+     * @param nodes Node of each vertex
+     * @param vertexData Vertex data to fill, 1 value per vertex
+     */
+    public void populateValues(int numVertices, FloatBuffer values, IntBuffer nodes, FloatBuffer vertexData) {
+
+        if(mNodes.length  < numVertices) mNodes  = new int[numVertices];
+        if(mValues.length < numVertices) mValues = new float[numVertices];
+
+        nodes.position(0);
+        nodes.get(mNodes, 0, numVertices);
+        nodes.position(0);
+
+        for(int i=0; i<numVertices; i++) mValues[i] = values.get(mNodes[i]);
+
+        vertexData.position(0);
+        vertexData.put(mValues, 0, numVertices);
+        vertexData.position(0);
+
+        // mValues no longer holds positions
+        mLastData = null;
+    }
+
+
+    /**
+     * Gets the box around a mesh's vertex positions - min x, y, z then max x, y, z
+     * @param first First vertex of the mesh in the batch
+     * @param numVertices Number of vertices in the mesh
+     * @param vertexData Vertex positions of the batch
+     * @param bounds Bounds to fill
+     * @param offset Where to put this mesh's bounds
+     */
+    public void getBounds(int first, int numVertices, FloatBuffer vertexData, FloatBuffer bounds, int offset) {
+
+        if(mKernel == NATIVE) {
+            getVertexBounds(first, numVertices, vertexData, bounds, offset);
+            return;
+        }
+
+        // The positions are still in the array if they were just built here
+
+        if(vertexData != mLastData) {
+
+            int nv = L_COR * (first + numVertices);
+
+            if(mValues.length < nv) mValues = new float[nv];
+
+            vertexData.position(0);
+            vertexData.get(mValues, 0, nv);
+            vertexData.position(0);
+
+            mLastData = vertexData;
+        }
+
+        bounds(mValues, first, numVertices, mBox);
+
+        for(int i=0; i<Frustum.L_BOUNDS; i++) bounds.put(offset + i, mBox[i]);
+    }
+
+
+    /**
+     * Gathers 3 values per vertex from its node
+     * @param numVertices Number of vertices
+     * @param values Nodal values, 3 per node
+     * @param nodes Node of each vertex
+     * @param out Vertex values, 3 per vertex
+     */
+    static void gather(int numVertices, FloatBuffer values, int[] nodes, float[] out) {
+
+        for(int i=0, j=0; i<numVertices; i++, j+=L_COR) {
+
+            int n = L_COR * nodes[i];
+
+            out[j]     = values.get(n);
+            out[j + 1] = values.get(n + 1);
+            out[j + 2] = values.get(n + 2);
+        }
+    }
+
+
+    /**
+     * Gets the box around vertices <first> to <first>+<numVertices>-1. The
+     * comparisons are the same as the native kernel's, so the results match it
+     * @param positions Vertex positions, 3 per vertex
+     * @param first First vertex
+     * @param numVertices Number of vertices
+     * @param box Min x, y, z then max x, y, z - filled in
+     */
+    static void bounds(float[] positions, int first, int numVertices, float[] box) {
+
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+
+        int last = L_COR * (first + numVertices);
+
+        for(int j=L_COR*first; j<last; j+=L_COR) {
+
+            float x = positions[j];
+            float y = positions[j + 1];
+            float z = positions[j + 2];
+
+            minX = x < minX ? x : minX;
+            minY = y < minY ? y : minY;
+            minZ = z < minZ ? z : minZ;
+
+            maxX = x > maxX ? x : maxX;
+            maxY = y > maxY ? y : maxY;
+            maxZ = z > maxZ ? z : maxZ;
+        }
+
+        box[0] = minX;  box[1] = minY;  box[2] = minZ;
+        box[3] = maxX;  box[4] = maxY;  box[5] = maxZ;
+    }
+}
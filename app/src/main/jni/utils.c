@@ -2,253 +2,170 @@
 #include <string.h>
 #include <math.h>
 #include <jni.h>
-#include <android/log.h>
 #include "utils.h"
 
 #define  DEBUG    0
 
+// Logging goes to logcat. Built on a desktop, for the benchmarks, there isn't one
+
+#ifdef __ANDROID__
+#include <android/log.h>
+
 #define  LOG_TAG    "JNI_UTILS"
 #define  LOGD(...)  __android_log_print(ANDROID_LOG_DEBUG,LOG_TAG,__VA_ARGS__)
 #define  LOGE(...)  __android_log_print(ANDROID_LOG_ERROR,LOG_TAG,__VA_ARGS__)
 #define  LOGI(...)  __android_log_print(ANDROID_LOG_INFO,LOG_TAG,__VA_ARGS__)
+#else
+#define  LOGD(...)
+#define  LOGE(...)
+#define  LOGI(...)
+#endif
 
-#define  OK    1
-
-#define  DISP_X   0    // X Displacement
-#define  DISP_Y   1    // Y Displacement
-#define  DISP_Z   2    // Z Displacement
-#define  DISP_R   3    // Resultant Displacement
+#define  OK     1
+#define  ERROR  0
 
 #define  L_COR    3
-
-#define  L_SH_TOP 5
+#define  L_FACE   4
 
 #define  X        0
 #define  Y        1
 #define  Z        2
 
-#define NUM_CONTOUR_LEVELS    24
-
-static float contour_values[24];
-
-
 jint
-Java_com_example_myfirstapp_MyRenderer_populatePartVertexData( JNIEnv* env,
-                                                               jobject thiz,
-                                                               jint numEls,             // Number of elements in part
-                                                               jobject bufUndef,        // All undeformed coordinates
-                                                               jobject bufCoords,       // All current coordinates
-                                                               jobject bufShTop,        // All shell topology
-                                                               jintArray elsInPart,     // List of internal element indices in part
-                                                               jobject bufVertexData,   // Vertex data buffer to fill
-                                                               jboolean siPlot,         // Flag whether to do SI plot or not
-                                                               jint eswap)
+Java_com_example_myfirstapp_VertexBuilder_populateVertexData( JNIEnv* env,
+                                                              jobject thiz,
+                                                              jint numVertices,        // Number of vertices in the batch
+                                                              jobject bufCoords,       // All current coordinates (or other nodal vectors)
+                                                              jobject bufNodes,        // Internal node for each vertex
+                                                              jobject bufVertexData)   // Vertex buffer to fill
 {
-// TODO - 1. Contour values should not be hard-coded...
-//        2. ElsInPart -> pass as IntBuffer rather then int Array??
-//        3. Call OpenGL functions in native code...
-//        4. Pass size of vertexData buffer -> check we don't overflow it
+// Fills the vertex positions for a batch - one vertex per node.
+// All buffers are in native byte order - they are converted when read from the file
+//
+// TODO - 1. Call OpenGL functions in native code...
+//        2. Pass size of vertexData buffer -> check we don't overflow it
 
-    if(DEBUG) LOGD("Called populatePartVertexData");
+    if(DEBUG) LOGD("Called populateVertexData");
 
-    int   i, j, el, pid, prev_pid, offsetVtx;
-    int   top[4];
-    float x[4], y[4], z[4];
-    float dm[4];
-    float norm[3];
-    float r, g, b;
+    int   i, n, offsetVtx;
 
 
 // TODO Should check for null
 
-    jint* pElsInPart = (*env)->GetIntArrayElements(env, elsInPart, 0);
-
-    int*   pbufShTop      = (int *)  (*env)->GetDirectBufferAddress( env, (jobject)bufShTop      );
+    int*   pbufNodes      = (int *)  (*env)->GetDirectBufferAddress( env, (jobject)bufNodes      );
     float* pbufVertexData = (float *)(*env)->GetDirectBufferAddress( env, (jobject)bufVertexData );
-    float* pbufUndef      = (float *)(*env)->GetDirectBufferAddress( env, (jobject)bufUndef      );
     float* pbufCoords     = (float *)(*env)->GetDirectBufferAddress( env, (jobject)bufCoords     );
 
-
-    jlong len = (*env)->GetDirectBufferCapacity(env, (jobject)bufShTop);
-
 // Put required data into pbufVertexData
 
     offsetVtx = 0;
-    prev_pid = -1;
 
-    for(i=0; i<numEls; i++)
+    for(i=0; i<numVertices; i++)
     {
-        el = pElsInPart[i];
-
-// Get topology and coordinates for this elements
-
-        for(j=0; j<4; j++)
-        {
-            top[j] = pbufShTop[j + L_SH_TOP*el];
-            if(eswap) do_eswap((unsigned char *)&top[j]);
-            top[j]--;
-
-            x[j] = pbufCoords[L_COR*top[j] + X];
-            y[j] = pbufCoords[L_COR*top[j] + Y];
-            z[j] = pbufCoords[L_COR*top[j] + Z];
-
-            if(eswap)
-            {
-              do_eswap((unsigned char *)&x[j]);
-              do_eswap((unsigned char *)&y[j]);
-              do_eswap((unsigned char *)&z[j]);
-            }
-        }
-
-// Internal part ID for this element
-
-        pid = pbufShTop[4 + L_SH_TOP*el];
-        if(eswap) do_eswap((unsigned char *)&pid);
-        pid--;
-
-// Get element normal
+        n = pbufNodes[i];
 
-        get_sh_norm(x, y, z, norm);
-
-
-// Get colours. Calculate data value if contouring
-
-        if (siPlot)
-        {
-            for(j=0; j<4; j++)
-            {
-                dm[j] = get_node_disp(x[j], y[j], z[j], pbufUndef, top[j], DISP_R, eswap);
-            }
-
-            get_contour_colour(dm[0], &r, &g, &b);
-        }
-        else
-        {
-            // Colour by part
+        pbufVertexData[offsetVtx++] = pbufCoords[L_COR*n + X];
+        pbufVertexData[offsetVtx++] = pbufCoords[L_COR*n + Y];
+        pbufVertexData[offsetVtx++] = pbufCoords[L_COR*n + Z];
+    }
 
-            if(pid != prev_pid) {
-                get_part_default_colour(pid, &r, &g, &b);
-                prev_pid = pid;
-            }
-        }
 
-// Populate vertex data buffer
+    return OK;
+}
 
-        pbufVertexData[offsetVtx++] = x[0];	     pbufVertexData[offsetVtx++] = y[0];      pbufVertexData[offsetVtx++] = z[0];
-        pbufVertexData[offsetVtx++] = norm[X];   pbufVertexData[offsetVtx++] = norm[Y];   pbufVertexData[offsetVtx++] = norm[Z];
-        pbufVertexData[offsetVtx++] = r;         pbufVertexData[offsetVtx++] = g;         pbufVertexData[offsetVtx++] = b;
 
-        pbufVertexData[offsetVtx++] = x[1];	     pbufVertexData[offsetVtx++] = y[1];      pbufVertexData[offsetVtx++] = z[1];
-        pbufVertexData[offsetVtx++] = norm[X];   pbufVertexData[offsetVtx++] = norm[Y];   pbufVertexData[offsetVtx++] = norm[Z];
 
-        if (siPlot) get_contour_colour(dm[1], &r, &g, &b);
-        pbufVertexData[offsetVtx++] = r;         pbufVertexData[offsetVtx++] = g;         pbufVertexData[offsetVtx++] = b;
+jint
+Java_com_example_myfirstapp_VertexBuilder_getVertexBounds( JNIEnv* env,
+                                                           jobject thiz,
+                                                           jint first,              // First vertex of the part mesh
+                                                           jint numVertices,        // Number of vertices in part mesh
+                                                           jobject bufVertexData,   // Vertex positions for the mesh's batch
+                                                           jobject bufBounds,       // Bounds for all meshes
+                                                           jint offset)             // Where to put this mesh's bounds
+{
+// Gets the box around a part mesh's vertex positions - min x, y, z then max x, y, z.
+// Called straight after populateVertexData while the positions are still in cache
 
-        pbufVertexData[offsetVtx++] = x[2];	     pbufVertexData[offsetVtx++] = y[2];      pbufVertexData[offsetVtx++] = z[2];
-        pbufVertexData[offsetVtx++] = norm[X];   pbufVertexData[offsetVtx++] = norm[Y];   pbufVertexData[offsetVtx++] = norm[Z];
+    if(DEBUG) LOGD("Called getVertexBounds");
 
-        if (siPlot) get_contour_colour(dm[2], &r, &g, &b);
-        pbufVertexData[offsetVtx++] = r;         pbufVertexData[offsetVtx++] = g;         pbufVertexData[offsetVtx++] = b;
+    int   i;
+    float x, y, z;
 
-        pbufVertexData[offsetVtx++] = x[2];	     pbufVertexData[offsetVtx++] = y[2];      pbufVertexData[offsetVtx++] = z[2];
-        pbufVertexData[offsetVtx++] = norm[X];   pbufVertexData[offsetVtx++] = norm[Y];   pbufVertexData[offsetVtx++] = norm[Z];
-        pbufVertexData[offsetVtx++] = r;         pbufVertexData[offsetVtx++] = g;         pbufVertexData[offsetVtx++] = b;
+    float* pbufVertexData = (float *)(*env)->GetDirectBufferAddress( env, (jobject)bufVertexData );
+    float* pbufBounds     = (float *)(*env)->GetDirectBufferAddress( env, (jobject)bufBounds     );
 
-        pbufVertexData[offsetVtx++] = x[3];	     pbufVertexData[offsetVtx++] = y[3];      pbufVertexData[offsetVtx++] = z[3];
-        pbufVertexData[offsetVtx++] = norm[X];   pbufVertexData[offsetVtx++] = norm[Y];   pbufVertexData[offsetVtx++] = norm[Z];
+    float minX =  INFINITY, minY =  INFINITY, minZ =  INFINITY;
+    float maxX = -INFINITY, maxY = -INFINITY, maxZ = -INFINITY;
 
-        if (siPlot) get_contour_colour(dm[3], &r, &g, &b);
-        pbufVertexData[offsetVtx++] = r;         pbufVertexData[offsetVtx++] = g;         pbufVertexData[offsetVtx++] = b;
+    for(i=first; i<first+numVertices; i++)
+    {
+        x = pbufVertexData[L_COR*i + X];
+        y = pbufVertexData[L_COR*i + Y];
+        z = pbufVertexData[L_COR*i + Z];
 
-        pbufVertexData[offsetVtx++] = x[0];	     pbufVertexData[offsetVtx++] = y[0];      pbufVertexData[offsetVtx++] = z[0];
-        pbufVertexData[offsetVtx++] = norm[X];   pbufVertexData[offsetVtx++] = norm[Y];   pbufVertexData[offsetVtx++] = norm[Z];
+        if(x < minX) minX = x;
+        if(y < minY) minY = y;
+        if(z < minZ) minZ = z;
 
-        if (siPlot) get_contour_colour(dm[0], &r, &g, &b);
-        pbufVertexData[offsetVtx++] = r;         pbufVertexData[offsetVtx++] = g;         pbufVertexData[offsetVtx++] = b;
+        if(x > maxX) maxX = x;
+        if(y > maxY) maxY = y;
+        if(z > maxZ) maxZ = z;
     }
 
-
-// Release the JAVA array copy
-    (*env)->ReleaseIntArrayElements(env, elsInPart, pElsInPart, 0);
-
+    pbufBounds[offset + 0] = minX;
+    pbufBounds[offset + 1] = minY;
+    pbufBounds[offset + 2] = minZ;
+    pbufBounds[offset + 3] = maxX;
+    pbufBounds[offset + 4] = maxY;
+    pbufBounds[offset + 5] = maxZ;
 
     return OK;
 }
 
 
 
-void do_eswap(unsigned char *buffer)
-{
-    int i;
-
-    unsigned char b0, b1;
-
-    b0 = buffer[0];
-    b1 = buffer[1];
-
-    buffer[0] = buffer[3];
-    buffer[1] = buffer[2];
-
-    buffer[2] = b1;
-    buffer[3] = b0;
-}
-
-
-
 jint
-Java_com_example_myfirstapp_MyRenderer_updateContourLimits( JNIEnv* env,
-                                                            jobject thiz,
-                                                            jobject bufUndef,        // All undeformed coordinates
-                                                            jobject bufCoords,       // All current coordinates
-                                                            jint    numNodes,
-                                                            jint    eswap)
+Java_com_example_myfirstapp_NodalNormals_calcFaceNormals( JNIEnv* env,
+                                                          jobject thiz,
+                                                          jobject bufCoords,        // All current coordinates
+                                                          jobject bufFaces,         // Faces, four nodes each
+                                                          jint    first,            // First face
+                                                          jint    last,             // Last face + 1
+                                                          jobject bufFaceNormals)   // Face normals to fill
 {
-// Updates the contour bar values based on current state values
-//
+// Calculates the normals of faces <first> to <last>-1. They aren't normalised,
+// so they are weighted by the face area when summed at the nodes
 
-    if(DEBUG) LOGD("Called updateContourLimits");
+    if(DEBUG) LOGD("Called calcFaceNormals");
 
-    int     i;
-    float   x, y, z, val, inc, max = -1e20;
-
-// TODO - check for NULL
+    int   i, j, n;
+    float x[4], y[4], z[4];
 
-    float* pbufUndef  = (float *)(*env)->GetDirectBufferAddress( env, (jobject)bufUndef  );
-    float* pbufCoords = (float *)(*env)->GetDirectBufferAddress( env, (jobject)bufCoords );
+    float* pbufCoords      = (float *)(*env)->GetDirectBufferAddress( env, (jobject)bufCoords      );
+    int*   pbufFaces       = (int *)  (*env)->GetDirectBufferAddress( env, (jobject)bufFaces       );
+    float* pbufFaceNormals = (float *)(*env)->GetDirectBufferAddress( env, (jobject)bufFaceNormals );
 
-// Calc max value
-// Assume plotting DISP_R for now... so limits will go from 0 to max
-// And assumes all nodes are being plotted...
+// The buffers must be direct
 
-    for(i=0; i<numNodes; i++)
+    if(pbufCoords == NULL || pbufFaces == NULL || pbufFaceNormals == NULL)
     {
-        x = pbufCoords[X + i * L_COR];
-        y = pbufCoords[Y + i * L_COR];
-        z = pbufCoords[Z + i * L_COR];
-
-        if(eswap)
-        {
-            do_eswap((unsigned char *)&x);
-            do_eswap((unsigned char *)&y);
-            do_eswap((unsigned char *)&z);
-        }
-
-        val = get_node_disp(x, y, z, pbufUndef, i, DISP_R, eswap);
-
-        if(val > max) max = val;
-
+        LOGE("Buffer isn't direct in calcFaceNormals");
+        return ERROR;
     }
 
-// Set contour levels
-
-    inc = max / (NUM_CONTOUR_LEVELS - 1);
-    val = 0.0;
-
-    for(i=0; i<NUM_CONTOUR_LEVELS; i++)
+    for(i=first; i<last; i++)
     {
-        contour_values[i] = val;
+        for(j=0; j<4; j++)
+        {
+            n = pbufFaces[L_FACE*i + j] - 1;
+
+            x[j] = pbufCoords[L_COR*n + X];
+            y[j] = pbufCoords[L_COR*n + Y];
+            z[j] = pbufCoords[L_COR*n + Z];
+        }
 
-        val += inc;
+        get_sh_norm(x, y, z, &pbufFaceNormals[L_COR*i]);
     }
 
     return OK;
@@ -256,44 +173,60 @@ Java_com_example_myfirstapp_MyRenderer_updateContourLimits( JNIEnv* env,
 
 
 
-float get_node_disp(float x, float y, float z, float *undef, int n, int type, int eswap)
+jint
+Java_com_example_myfirstapp_NodalNormals_calcNodalNormals( JNIEnv* env,
+                                                           jobject thiz,
+                                                           jobject bufStart,         // Start of each node's row
+                                                           jobject bufAdjacent,      // Faces at each node
+                                                           jobject bufFaceNormals,   // Face normals
+                                                           jint    first,            // First node
+                                                           jint    last,             // Last node + 1
+                                                           jobject bufNormals)       // Nodal normals to fill
 {
-// <x>,<y>,<z>  Current coords
-// <undef>      Undeformed coords
-// <n>          Internal node
+// Sums the normals of the faces at nodes <first> to <last>-1 and normalises them.
+// Nodes with no faces get a zero normal
+
+    if(DEBUG) LOGD("Called calcNodalNormals");
 
-    float ux, uy, uz, dx, dy, dz, val;
+    int   i, k, f;
+    float nx, ny, nz, len;
 
-    switch(type)
+    int*   pbufStart        = (int *)  (*env)->GetDirectBufferAddress( env, (jobject)bufStart        );
+    int*   pbufAdjacent     = (int *)  (*env)->GetDirectBufferAddress( env, (jobject)bufAdjacent     );
+    float* pbufFaceNormals  = (float *)(*env)->GetDirectBufferAddress( env, (jobject)bufFaceNormals  );
+    float* pbufNormals      = (float *)(*env)->GetDirectBufferAddress( env, (jobject)bufNormals      );
+
+// The buffers must be direct
+
+    if(pbufStart == NULL || pbufAdjacent == NULL || pbufFaceNormals == NULL || pbufNormals == NULL)
     {
-        case DISP_X:  { ux = undef[X + L_COR * n];  if(eswap) do_eswap((unsigned char *)&ux);  val = x - ux;    break; }
-        case DISP_Y:  { uy = undef[Y + L_COR * n];  if(eswap) do_eswap((unsigned char *)&uy);  val = y - uy;    break; }
-        case DISP_Z:  { uz = undef[Z + L_COR * n];  if(eswap) do_eswap((unsigned char *)&uz);  val = z - uz;    break; }
+        LOGE("Buffer isn't direct in calcNodalNormals");
+        return ERROR;
+    }
 
-        case DISP_R:  { ux = undef[X + L_COR * n];
-                        uy = undef[Y + L_COR * n];
-                        uz = undef[Z + L_COR * n];
+    for(i=first; i<last; i++)
+    {
+        nx = ny = nz = 0.0;
 
-                        if(eswap)
-                        {
-                            do_eswap((unsigned char *)&ux);
-                            do_eswap((unsigned char *)&uy);
-                            do_eswap((unsigned char *)&uz);
-                        }
+        for(k=pbufStart[i]; k<pbufStart[i+1]; k++)
+        {
+            f = pbufAdjacent[k];
 
-                        dx = x - ux;
-                        dy = y - uy;
-                        dz = z - uz;
+            nx += pbufFaceNormals[L_COR*f + X];
+            ny += pbufFaceNormals[L_COR*f + Y];
+            nz += pbufFaceNormals[L_COR*f + Z];
+        }
 
-                        val = sqrtf(dx * dx + dy * dy + dz * dz);
+        len = sqrtf(nx * nx + ny * ny + nz * nz);
 
-                        break;
-                      }
+        if(len > 0.0) { nx /= len;  ny /= len;  nz /= len; }
 
-        default: val = 0.0;
+        pbufNormals[L_COR*i + X] = nx;
+        pbufNormals[L_COR*i + Y] = ny;
+        pbufNormals[L_COR*i + Z] = nz;
     }
 
-    return val;
+    return OK;
 }
 
 
@@ -322,78 +255,3 @@ void  get_sh_norm(float *x, float *y, float *z, float *norm)
 
     return;
 }
-
-
-
-void get_part_default_colour(int ipart, float *r, float *g, float *b)
-{
-    switch (ipart % 13) {
-
-                case 0:  { *r=1.0f;  *g=0.0f;  *b=0.0f;  break; }
-                case 1:  { *r=0.0f;  *g=1.0f;  *b=0.0f;  break; }
-                case 2:  { *r=0.0f;  *g=0.0f;  *b=1.0f;  break; }
-                case 3:  { *r=0.0f;  *g=1.0f;  *b=1.0f;  break; }
-                case 4:  { *r=1.0f;  *g=0.0f;  *b=1.0f;  break; }
-                case 5:  { *r=1.0f;  *g=1.0f;  *b=0.0f;  break; }
-                case 6:  { *r=1.0f;  *g=0.0f;  *b=0.58f; break; }
-                case 7:  { *r=1.0f;  *g=0.75f; *b=0.0f;  break; }
-                case 8:  { *r=0.66f; *g=1.0f;  *b=0.0f;  break; }
-                case 9:  { *r=0.0f;  *g=1.0f;  *b=0.66f; break; }
-                case 10: { *r=0.0f;  *g=0.5f;  *b=1.0f;  break; }
-                case 11: { *r=1.0f;  *g=0.5f;  *b=0.0f;  break; }
-                case 12: { *r=0.0f;  *g=0.75f; *b=1.0f;  break; }
-            }
-
-    return;
-}
-
-
-
-void get_contour_colour(float val, float *r, float *g, float *b)
-{
-// Returns the r, g, b contour colour for <val>
-
-/*
-         if(val < contour_values[0]) { *r=0.0f;  *g=0.0f;  *b=1.0f;  }
-    else if(val < contour_values[1]) { *r=0.0f;  *g=0.5f;  *b=1.0f;  }
-    else if(val < contour_values[2]) { *r=0.0f;  *g=0.75f; *b=1.0f;  }
-    else if(val < contour_values[3]) { *r=0.0f;  *g=1.0f;  *b=1.0f;  }
-    else if(val < contour_values[4]) { *r=0.0f;  *g=1.0f;  *b=0.66f; }
-    else if(val < contour_values[5]) { *r=0.0f;  *g=1.0f;  *b=0.0f;  }
-    else if(val < contour_values[6]) { *r=0.75f; *g=1.0f;  *b=0.0f;  }
-    else if(val < contour_values[7]) { *r=1.0f;  *g=1.0f;  *b=0.0f;  }
-    else if(val < contour_values[8]) { *r=1.0f;  *g=0.75f; *b=0.0f;  }
-    else if(val < contour_values[9]) { *r=1.0f;  *g=0.5f;  *b=0.0f;  }
-    else if(val < contour_values[10]){ *r=1.0f;  *g=0.0f;  *b=0.0f;  }
-    else if(val < contour_values[11]){ *r=1.0f;  *g=0.0f;  *b=0.58f; }
-    else                             { *r=1.0f;  *g=0.0f;  *b=1.0f;  }
-*/
-
-         if(val < contour_values[0])  { *r=0.0f;    *g=0.0f;    *b=1.0f;   }
-    else if(val < contour_values[1])  { *r=0.0f;    *g=0.25f;   *b=1.0f;   }
-    else if(val < contour_values[2])  { *r=0.0f;    *g=0.5f;    *b=1.0f;   }
-    else if(val < contour_values[3])  { *r=0.0f;    *g=0.625f;  *b=1.0f;   }
-    else if(val < contour_values[4])  { *r=0.0f;    *g=0.75f;   *b=1.0f;   }
-    else if(val < contour_values[5])  { *r=0.0f;    *g=0.875f;  *b=1.0f;   }
-    else if(val < contour_values[6])  { *r=0.0f;    *g=1.0f;    *b=1.0f;   }
-    else if(val < contour_values[7])  { *r=0.0f;    *g=1.0f;    *b=0.88f;  }
-    else if(val < contour_values[8])  { *r=0.0f;    *g=1.0f;    *b=0.66f;  }
-    else if(val < contour_values[9])  { *r=0.0f;    *g=1.0f;    *b=0.33f;  }
-    else if(val < contour_values[10]) { *r=0.0f;    *g=1.0f;    *b=0.0f;   }
-    else if(val < contour_values[11]) { *r=0.375f;  *g=1.0f;    *b=0.0f;   }
-    else if(val < contour_values[12]) { *r=0.75f;   *g=1.0f;    *b=0.0f;   }
-    else if(val < contour_values[13]) { *r=0.875f;  *g=1.0f;    *b=0.0f;   }
-    else if(val < contour_values[14]) { *r=1.0f;    *g=1.0f;    *b=0.0f;   }
-    else if(val < contour_values[15]) { *r=1.0f;    *g=0.875f;  *b=0.0f;   }
-    else if(val < contour_values[16]) { *r=1.0f;    *g=0.75f;   *b=0.0f;   }
-    else if(val < contour_values[17]) { *r=1.0f;    *g=0.625f;  *b=0.0f;   }
-    else if(val < contour_values[18]) { *r=1.0f;    *g=0.5f;    *b=0.0f;   }
-    else if(val < contour_values[19]) { *r=1.0f;    *g=0.25f;   *b=0.0f;   }
-    else if(val < contour_values[20]) { *r=1.0f;    *g=0.0f;    *b=0.0f;   }
-    else if(val < contour_values[21]) { *r=1.0f;    *g=0.0f;    *b=0.29f;  }
-    else if(val < contour_values[22]) { *r=1.0f;    *g=0.0f;    *b=0.58f;  }
-    else                              { *r=1.0f;    *g=0.0f;    *b=1.0f;   }
-
-
-    return;
-}
\ No newline at end of file
@@ -1,9 +1 @@
-void  get_part_default_colour(int, float *, float *, float *);
-void  get_contour_colour(float, float *, float *, float *);
-
-void  get_sh_norm(float *, float *, float *, float *);
-
-float get_node_disp(float, float, float, float *, int, int, int);
-
-
-void do_eswap(unsigned char *);
\ No newline at end of file
+void  get_sh_norm(float *, float *, float *, float *);
\ No newline at end of file
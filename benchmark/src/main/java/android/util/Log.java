@@ -0,0 +1,29 @@
+package android.util;
+
+/**
+ * Stands in for the Android log so the reader classes can run on a plain
+ * JVM. Debug messages are dropped, errors go to stderr.
+ */
+public final class Log {
+
+    private Log() {
+    }
+
+    public static int d(String tag, String msg) {
+        return 0;
+    }
+
+    public static int i(String tag, String msg) {
+        return 0;
+    }
+
+    public static int w(String tag, String msg) {
+        System.err.println(tag + ": " + msg);
+        return 0;
+    }
+
+    public static int e(String tag, String msg) {
+        System.err.println(tag + ": " + msg);
+        return 0;
+    }
+}
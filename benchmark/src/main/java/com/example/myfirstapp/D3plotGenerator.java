@@ -0,0 +1,651 @@
+package com.example.myfirstapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes synthetic d3plot families for testing and benchmarking at scale,
+ * without needing real models.
+ *
+ * The model is a square plate of shells, a block of solids next to it and a
+ * line of beams along its edge, plus any extra free nodes asked for. The
+ * parts are shared out between the element types and each type is split
+ * into strips, one per part. A wave runs across the model from state to
+ * state, and the nodal and element results follow from it, so every state
+ * is different and the values are smooth enough to contour.
+ *
+ * Everything is generated as it is written. Nothing model sized is held in
+ * memory, so families of many GB can be written about as fast as the disk
+ * takes them. States are whole within a member: a new member is started
+ * when the next state won't fit in the member size.
+ *
+ * From the command line:
+ *
+ *     D3plotGenerator [options] root
+ *
+ *     -shells N -solids N -beams N -nodes N -parts N -states N
+ *     -member-size MB -big-endian -little-endian -globals N
+ *     -temperatures -velocities -accelerations -no-shell-results
+ *     -maxint N -deletion
+ */
+public class D3plotGenerator {
+
+    /** Words in the control block */
+    private final static int L_CONTROL = 64;
+
+    /** Words written per transfer */
+    private final static int CHUNK = 256 * 1024;
+
+    /** Shell results - values per integration point (6 stresses and plastic strain) and per element */
+    final static int L_SHELL_IP   = 7;
+    final static int L_SHELL_REST = 12;
+
+    /** Solid and beam results per element */
+    private final static int L_SOLID_RES = 7;
+    private final static int L_BEAM_RES  = 6;
+
+    /** Spacing of the nodes */
+    private final static float SPACING = 1.0f;
+
+    /** Options */
+    private int mShells    = 10000;
+    private int mSolids    = 0;
+    private int mBeams     = 0;
+    private int mNodes     = 0;
+    private int mParts     = 10;
+    private int mStates    = 20;
+    private long mMemberSize = 0;
+    private ByteOrder mOrder = ByteOrder.LITTLE_ENDIAN;
+    private int mGlobals   = 1;
+    private boolean mTemperatures  = false;
+    private boolean mVelocities    = false;
+    private boolean mAccelerations = false;
+    private boolean mShellResults  = true;
+    private int mMaxint    = 3;
+    private boolean mDeletion = false;
+
+    /** Plate - shells along a row, and rows */
+    private int mPlateX;
+    private int mPlateY;
+
+    /** Solid block - solids along each side */
+    private int mBlockX;
+    private int mBlockY;
+    private int mBlockZ;
+
+    /** First node of each piece of the model (0 based) */
+    private int mPlateNode;
+    private int mBlockNode;
+    private int mBeamNode;
+    private int mExtraNode;
+
+    /** Free nodes, in a grid of this many along a row */
+    private int mExtraNodes;
+    private int mExtraSide;
+
+    /** Number of nodes */
+    private int mNumnp;
+
+    /** Parts for each element type, and the first one */
+    private int mSolidParts, mFirstSolidPart;
+    private int mBeamParts,  mFirstBeamPart;
+    private int mShellParts, mFirstShellPart;
+
+    /** Results per element */
+    private int mNumhv;
+    private int mNumbv;
+    private int mNumsv;
+
+    /** Length of a state, including the time word (in words) */
+    private long mStateWords;
+
+    /** Output */
+    private File mRoot;
+    private RandomAccessFile mFile;
+    private FileChannel mChannel;
+    private ByteBuffer mBuffer;
+
+    /** Member being written, and bytes written to it */
+    private int mMember;
+    private long mMemberBytes;
+
+
+
+    /**
+     * D3plotGenerator constructor, with a plate of 10000 shells in 10 parts and 20 states
+     */
+    public D3plotGenerator() {
+        super();
+    }
+
+
+    /** Number of shells, solids and beams */
+    public void setShells(int n) { mShells = Math.max(0, n); }
+    public void setSolids(int n) { mSolids = Math.max(0, n); }
+    public void setBeams(int n)  { mBeams  = Math.max(0, n); }
+
+    /** Minimum number of nodes - free nodes are added if the elements use fewer */
+    public void setNodes(int n)  { mNodes  = Math.max(0, n); }
+
+    /** Number of parts - at least one per element type that is present */
+    public void setParts(int n)  { mParts  = Math.max(1, n); }
+
+    /** Number of states */
+    public void setStates(int n) { mStates = Math.max(0, n); }
+
+    /** Largest member size (in bytes), or 0 to put everything in the root member */
+    public void setMemberSize(long bytes) { mMemberSize = Math.max(0, bytes); }
+
+    /** Byte order of the files */
+    public void setByteOrder(ByteOrder order) { mOrder = order; }
+
+    /** Number of global variables (nglbv) */
+    public void setGlobals(int n) { mGlobals = Math.max(0, n); }
+
+    /** Nodal results written as well as the coordinates (itflg, ivflg, iaflg) */
+    public void setTemperatures(boolean on)  { mTemperatures  = on; }
+    public void setVelocities(boolean on)    { mVelocities    = on; }
+    public void setAccelerations(boolean on) { mAccelerations = on; }
+
+    /** Shell stresses, plastic strain and resultants (numsv) */
+    public void setShellResults(boolean on) { mShellResults = on; }
+
+    /** Shell integration points */
+    public void setMaxint(int n) { mMaxint = Math.max(1, n); }
+
+    /** Element deletion table at the end of each state */
+    public void setDeletionTable(boolean on) { mDeletion = on; }
+
+
+
+    /**
+     * Writes the family
+     * @param root Root member. Other members are <root>01, <root>02, ...
+     * @throws IOException
+     */
+    public void write(File root) throws IOException {
+
+        layout();
+
+        mRoot   = root;
+        mBuffer = ByteBuffer.allocateDirect(CHUNK * 4).order(mOrder);
+
+        deleteMembers(root);
+
+        openMember(0);
+
+        try {
+            writeControl();
+            writeGeometry();
+
+            for(int s=0; s<mStates; s++) {
+
+                // Start a new member if this state won't fit. Every member has at least one state
+
+                long bytes = mMemberBytes + mBuffer.position() + mStateWords * 4;
+
+                if(mMemberSize > 0 && s > 0 && bytes > mMemberSize) {
+                    closeMember();
+                    openMember(mMember + 1);
+                }
+
+                writeState(s);
+            }
+
+        } finally {
+            closeMember();
+        }
+    }
+
+
+    /**
+     * Works out the sizes and positions of the pieces of the model
+     */
+    private void layout() {
+
+        // Plate of shells, as square as possible
+
+        mPlateX = mShells > 0 ? (int)Math.ceil(Math.sqrt(mShells)) : 0;
+        mPlateY = mShells > 0 ? (mShells + mPlateX - 1) / mPlateX  : 0;
+
+        // Block of solids, as cubic as possible
+
+        mBlockX = mSolids > 0 ? (int)Math.ceil(Math.cbrt(mSolids)) : 0;
+        mBlockY = mBlockX;
+        mBlockZ = mSolids > 0 ? (mSolids + mBlockX * mBlockY - 1) / (mBlockX * mBlockY) : 0;
+
+        // Nodes - plate, block, beams then free nodes
+
+        mPlateNode = 0;
+        mBlockNode = mPlateNode + (mShells > 0 ? (mPlateX + 1) * (mPlateY + 1) : 0);
+        mBeamNode  = mBlockNode + (mSolids > 0 ? (mBlockX + 1) * (mBlockY + 1) * (mBlockZ + 1) : 0);
+        mExtraNode = mBeamNode  + (mBeams  > 0 ? mBeams + 1 : 0);
+
+        mExtraNodes = Math.max(0, mNodes - mExtraNode);
+        mExtraSide  = Math.max(1, (int)Math.ceil(Math.sqrt(mExtraNodes)));
+
+        mNumnp = mExtraNode + mExtraNodes;
+
+        // Share the parts out between the element types, by number of elements
+
+        int types = (mSolids > 0 ? 1 : 0) + (mBeams > 0 ? 1 : 0) + (mShells > 0 ? 1 : 0);
+
+        int spare = Math.max(0, mParts - types);
+        long nels = (long)mSolids + mBeams + mShells;
+
+        mSolidParts = mSolids > 0 ? 1 + (int)(spare * (long)mSolids / Math.max(1, nels)) : 0;
+        mBeamParts  = mBeams  > 0 ? 1 + (int)(spare * (long)mBeams  / Math.max(1, nels)) : 0;
+        mShellParts = mShells > 0 ? Math.max(1, Math.max(mParts, types) - mSolidParts - mBeamParts) : 0;
+
+        // Parts are numbered solids, beams then shells
+
+        mFirstSolidPart = 1;
+        mFirstBeamPart  = mFirstSolidPart + mSolidParts;
+        mFirstShellPart = mFirstBeamPart  + mBeamParts;
+
+        // Results per element
+
+        mNumhv = mSolids > 0 ? L_SOLID_RES : 0;
+        mNumbv = mBeams  > 0 ? L_BEAM_RES  : 0;
+        mNumsv = mShells > 0 && mShellResults ? L_SHELL_IP * mMaxint + L_SHELL_REST : 0;
+
+        // State length
+
+        mStateWords = 1 + mGlobals
+                    + (long)Node.L_COR * mNumnp
+                    + (mTemperatures  ? (long)Node.L_TEM * mNumnp : 0)
+                    + (mVelocities    ? (long)Node.L_VEL * mNumnp : 0)
+                    + (mAccelerations ? (long)Node.L_ACC * mNumnp : 0)
+                    + (long)mNumhv * mSolids
+                    + (long)mNumbv * mBeams
+                    + (long)mNumsv * mShells
+                    + (mDeletion ? (long)mSolids + mBeams + mShells : 0);
+    }
+
+
+    /**
+     * Writes the control block
+     */
+    private void writeControl() throws IOException {
+
+        int[] control = new int[L_CONTROL];
+
+        control[14] = Float.floatToIntBits(971.0f);       // Version
+        control[15] = 4;                                  // ndim - elements unpacked
+        control[16] = mNumnp;
+        control[17] = 6;                                  // Code - LS-DYNA
+        control[18] = mGlobals;                           // nglbv
+        control[19] = mTemperatures  ? 1 : 0;             // itflg
+        control[20] = 1;                                  // iuflg
+        control[21] = mVelocities    ? 1 : 0;             // ivflg
+        control[22] = mAccelerations ? 1 : 0;             // iaflg
+        control[23] = mSolids;                            // nel8
+        control[24] = mSolidParts;                        // nummat8
+        control[27] = mNumhv;                             // nv3d
+        control[28] = mBeams;                             // nel2
+        control[29] = mBeamParts;                         // nummat2
+        control[30] = mNumbv;                             // nv1d
+        control[31] = mShells;                            // nel4
+        control[32] = mShellParts;                        // nummat4
+        control[33] = mNumsv;                             // nv2d
+        control[34] = 0;                                  // neiph
+        control[35] = 0;                                  // neips
+        control[36] = mDeletion ? -(10000 + mMaxint) : mMaxint;
+
+        // Shell results written - stresses, plastic strain, resultants, thickness and energies
+
+        int ioshl = mNumsv > 0 ? 1000 : 999;
+
+        control[43] = ioshl;
+        control[44] = ioshl;
+        control[45] = ioshl;
+        control[46] = ioshl;
+
+        for(int i=0; i<L_CONTROL; i++) putInt(control[i]);
+    }
+
+
+    /**
+     * Writes the geometry block - coordinates then solid, beam and shell topology
+     */
+    private void writeGeometry() throws IOException {
+
+        for(int n=0; n<mNumnp; n++) {
+            putFloat(getX(n));
+            putFloat(getY(n));
+            putFloat(getZ(n));
+        }
+
+        // Solids, a slab of layers per part
+
+        for(int e=0; e<mSolids; e++) {
+
+            int i = e % mBlockX;
+            int j = (e / mBlockX) % mBlockY;
+            int k = e / (mBlockX * mBlockY);
+
+            int nx = mBlockX + 1;
+            int ny = mBlockY + 1;
+
+            int n1 = 1 + mBlockNode + i + nx * (j + ny * k);
+            int n5 = n1 + nx * ny;
+
+            putInt(n1);  putInt(n1 + 1);  putInt(n1 + 1 + nx);  putInt(n1 + nx);
+            putInt(n5);  putInt(n5 + 1);  putInt(n5 + 1 + nx);  putInt(n5 + nx);
+
+            putInt(mFirstSolidPart + (int)((long)e * mSolidParts / mSolids));
+        }
+
+        // Beams, in a line. The third node orients the beam
+
+        for(int e=0; e<mBeams; e++) {
+
+            int n1 = 1 + mBeamNode + e;
+
+            putInt(n1);
+            putInt(n1 + 1);
+            putInt(n1);
+            putInt(0);
+            putInt(0);
+            putInt(mFirstBeamPart + (int)((long)e * mBeamParts / mBeams));
+        }
+
+        // Shells, a strip of rows per part
+
+        for(int e=0; e<mShells; e++) {
+
+            int i = e % mPlateX;
+            int j = e / mPlateX;
+
+            int n1 = 1 + mPlateNode + i + (mPlateX + 1) * j;
+
+            putInt(n1);
+            putInt(n1 + 1);
+            putInt(n1 + 1 + (mPlateX + 1));
+            putInt(n1 + (mPlateX + 1));
+
+            putInt(mFirstShellPart + (int)((long)e * mShellParts / mShells));
+        }
+    }
+
+
+    /**
+     * Writes a state
+     * @param s State, from 0
+     */
+    private void writeState(int s) throws IOException {
+
+        float time = 0.001f * s;
+
+        putFloat(time);
+
+        for(int g=0; g<mGlobals; g++) putFloat(g == 0 ? 0.5f * s : 0.0f);
+
+        // Nodal results - temperatures, coordinates, velocities then accelerations
+
+        if(mTemperatures) {
+            for(int n=0; n<mNumnp; n++) putFloat(20.0f + getWave(n, s));
+        }
+
+        for(int n=0; n<mNumnp; n++) {
+            putFloat(getX(n));
+            putFloat(getY(n));
+            putFloat(getZ(n) + getWave(n, s));
+        }
+
+        if(mVelocities) {
+            for(int n=0; n<mNumnp; n++) {
+                putFloat(0.0f);
+                putFloat(0.0f);
+                putFloat(getWave(n, s + 1) - getWave(n, s));
+            }
+        }
+
+        if(mAccelerations) {
+            for(int n=0; n<mNumnp; n++) {
+                putFloat(0.0f);
+                putFloat(0.0f);
+                putFloat(getWave(n, s + 1) - 2.0f * getWave(n, s) + getWave(n, s - 1));
+            }
+        }
+
+        // Element results - solids, beams then shells
+
+        for(int e=0; e<mSolids; e++) {
+
+            float a = getLoad(e, s);
+
+            putFloat(a);         putFloat(0.5f * a);  putFloat(0.25f * a);     // Normal stresses
+            putFloat(0.1f * a);  putFloat(0.0f);      putFloat(0.0f);          // Shear stresses
+            putFloat(Math.max(0.0f, Math.abs(a) - 200.0f) * 1.0e-4f);         // Plastic strain
+        }
+
+        for(int e=0; e<mBeams; e++) {
+
+            float a = getLoad(e, s);
+
+            putFloat(a);  putFloat(0.1f * a);  putFloat(0.1f * a);             // Forces
+            putFloat(0.0f);  putFloat(0.01f * a);  putFloat(0.01f * a);        // Moments
+        }
+
+        if(mNumsv > 0) {
+
+            for(int e=0; e<mShells; e++) {
+
+                float a = getLoad(e, s);
+
+                // Stresses vary through the thickness - bending plus membrane
+
+                for(int ip=0; ip<mMaxint; ip++) {
+
+                    float z  = mMaxint > 1 ? 2.0f * ip / (mMaxint - 1) - 1.0f : 0.0f;
+                    float sx = a * (0.5f + z);
+                    float sy = 0.5f * a * (0.5f - z);
+
+                    putFloat(sx);  putFloat(sy);  putFloat(0.0f);
+                    putFloat(0.2f * a);  putFloat(0.0f);  putFloat(0.0f);
+
+                    putFloat(Math.max(0.0f, Math.abs(sx) - 200.0f) * 1.0e-4f);
+                }
+
+                // Resultants, thickness and energies
+
+                for(int r=0; r<8; r++) putFloat(0.01f * a);
+
+                putFloat(1.0f);
+                putFloat(0.0f);
+                putFloat(0.0f);
+                putFloat(1.0e-3f * a * a);
+            }
+        }
+
+        // Deletion table - every element is still there
+
+        if(mDeletion) {
+            for(long e=0, n=(long)mSolids + mBeams + mShells; e<n; e++) putFloat(1.0f);
+        }
+    }
+
+
+    /**
+     * @return the undeformed coordinates of node <n>
+     */
+    private float getX(int n) {
+
+        if(n < mBlockNode) return SPACING * (n % (mPlateX + 1));
+        if(n < mBeamNode)  return SPACING * (mPlateX + 2 + (n - mBlockNode) % (mBlockX + 1));
+        if(n < mExtraNode) return SPACING * -2.0f;
+
+        return SPACING * ((n - mExtraNode) % mExtraSide);
+    }
+
+    private float getY(int n) {
+
+        if(n < mBlockNode) return SPACING * (n / (mPlateX + 1));
+        if(n < mBeamNode)  return SPACING * (((n - mBlockNode) / (mBlockX + 1)) % (mBlockY + 1));
+        if(n < mExtraNode) return SPACING * (n - mBeamNode);
+
+        return -SPACING * (4 + (n - mExtraNode) / mExtraSide);
+    }
+
+    private float getZ(int n) {
+
+        if(n < mBlockNode) return 0.0f;
+        if(n < mBeamNode)  return -SPACING * ((n - mBlockNode) / ((mBlockX + 1) * (mBlockY + 1)));
+
+        return 0.0f;
+    }
+
+
+    /**
+     * @return the displacement of node <n> in state <s> - a wave travelling along x, growing with time
+     */
+    private float getWave(int n, int s) {
+        return (float)Math.sin(0.1 * (getX(n) - s)) * 0.01f * s;
+    }
+
+
+    /**
+     * @return a stress level for element <e> in state <s>
+     */
+    private float getLoad(int e, int s) {
+        return (float)Math.sin(0.01 * e + 0.1 * s) * 10.0f * s;
+    }
+
+
+    /**
+     * Deletes any members left from a previous family with the same root,
+     * and its index and contour limits
+     */
+    private static void deleteMembers(File root) {
+
+        root.delete();
+
+        new File(root.getPath() + ".idx").delete();
+        new File(root.getPath() + ".lim").delete();
+
+        for(int i=1; ; i++) {
+
+            File f = getMember(root, i);
+
+            if(!f.exists()) break;
+
+            f.delete();
+        }
+    }
+
+
+    /**
+     * @return family member <i>, named as Family expects
+     */
+    private static File getMember(File root, int i) {
+
+        if(i == 0)  return root;
+        if(i < 10)  return new File(root.getPath() + "0" + Integer.toString(i));
+
+        return new File(root.getPath() + Integer.toString(i));
+    }
+
+
+    private void openMember(int i) throws IOException {
+
+        mMember      = i;
+        mMemberBytes = 0;
+
+        mFile = new RandomAccessFile(getMember(mRoot, i), "rw");
+        mFile.setLength(0);
+
+        mChannel = mFile.getChannel();
+    }
+
+
+    private void closeMember() throws IOException {
+
+        if(mFile == null) return;
+
+        flush();
+
+        mFile.close();
+        mFile = null;
+    }
+
+
+    private void putInt(int value) throws IOException {
+
+        if(!mBuffer.hasRemaining()) flush();
+
+        mBuffer.putInt(value);
+    }
+
+
+    private void putFloat(float value) throws IOException {
+
+        if(!mBuffer.hasRemaining()) flush();
+
+        mBuffer.putFloat(value);
+    }
+
+
+    private void flush() throws IOException {
+
+        mBuffer.flip();
+
+        mMemberBytes += mBuffer.remaining();
+
+        while(mBuffer.hasRemaining()) mChannel.write(mBuffer);
+
+        mBuffer.clear();
+    }
+
+
+    /**
+     * Writes a family from the command line
+     * @param args Options then the root member
+     */
+    public static void main(String[] args) throws IOException {
+
+        D3plotGenerator gen = new D3plotGenerator();
+
+        String root = null;
+
+        for(int i=0; i<args.length; i++) {
+
+            String a = args[i];
+
+                 if(a.equals("-shells"))           gen.setShells(Integer.parseInt(args[++i]));
+            else if(a.equals("-solids"))           gen.setSolids(Integer.parseInt(args[++i]));
+            else if(a.equals("-beams"))            gen.setBeams(Integer.parseInt(args[++i]));
+            else if(a.equals("-nodes"))            gen.setNodes(Integer.parseInt(args[++i]));
+            else if(a.equals("-parts"))            gen.setParts(Integer.parseInt(args[++i]));
+            else if(a.equals("-states"))           gen.setStates(Integer.parseInt(args[++i]));
+            else if(a.equals("-member-size"))      gen.setMemberSize(Long.parseLong(args[++i]) * 1024 * 1024);
+            else if(a.equals("-big-endian"))       gen.setByteOrder(ByteOrder.BIG_ENDIAN);
+            else if(a.equals("-little-endian"))    gen.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+            else if(a.equals("-globals"))          gen.setGlobals(Integer.parseInt(args[++i]));
+            else if(a.equals("-temperatures"))     gen.setTemperatures(true);
+            else if(a.equals("-velocities"))       gen.setVelocities(true);
+            else if(a.equals("-accelerations"))    gen.setAccelerations(true);
+            else if(a.equals("-no-shell-results")) gen.setShellResults(false);
+            else if(a.equals("-maxint"))           gen.setMaxint(Integer.parseInt(args[++i]));
+            else if(a.equals("-deletion"))         gen.setDeletionTable(true);
+            else                                   root = a;
+        }
+
+        if(root == null) {
+            System.err.println("Usage: D3plotGenerator [options] root");
+            System.exit(1);
+        }
+
+        long t0 = System.currentTimeMillis();
+
+        gen.write(new File(root));
+
+        System.out.println("Wrote " + root + " - " + Integer.toString(gen.mNumnp) + " nodes, " +
+                           Integer.toString(gen.mMember + 1) + " members in " +
+                           Long.toString(System.currentTimeMillis() - t0) + "ms");
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.myfirstapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the d3plot reader path, over a range of model sizes and
+ * both byte orders. The models are written by D3plotGenerator the first time
+ * they are needed and kept under bench.dir.
+ *
+ * The state cache is given no budget, so it only holds the minimum number
+ * of states and reading coordinates goes to the mapped members nearly
+ * every time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReaderBenchmark {
+
+    /** Number of parts in each model */
+    private final static int NUM_PARTS = 100;
+
+    /** Number of states in each model */
+    private final static int NUM_STATES = 50;
+
+    /** Random state accesses - repeated */
+    private final static int NUM_RANDOM = 1024;
+
+    @Param({"10000", "100000", "1000000"})
+    public int shells;
+
+    @Param({"LITTLE_ENDIAN", "BIG_ENDIAN"})
+    public String endian;
+
+    /** Root member */
+    private File mRoot;
+
+    /** Opened family */
+    private Family mFam;
+
+    /** Next state for the sequential reads */
+    private int mNext = 0;
+
+    /** States for the random reads */
+    private int[] mRandom = new int[NUM_RANDOM];
+
+
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+
+        ByteOrder order = endian.equals("BIG_ENDIAN") ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+
+        File dir = new File(System.getProperty("bench.dir", "build/models"));
+
+        dir.mkdirs();
+
+        mRoot = new File(dir, "plate_" + Integer.toString(shells) + "_" + endian.toLowerCase() + ".ptf");
+
+        if(!mRoot.exists()) {
+
+            D3plotGenerator gen = new D3plotGenerator();
+
+            gen.setShells(shells);
+            gen.setParts(NUM_PARTS);
+            gen.setStates(NUM_STATES);
+            gen.setByteOrder(order);
+            gen.setShellResults(false);
+
+            gen.write(mRoot);
+        }
+
+        mFam = open(mRoot, true);
+
+        Random random = new Random(1);
+
+        for(int i=0; i<NUM_RANDOM; i++) mRandom[i] = 1 + random.nextInt(mFam.getNumOfStates());
+    }
+
+
+    private static Family open(File root, boolean useIndex) throws IOException {
+
+        Family fam = new Family(root.getPath());
+
+        fam.setCacheBudget(0);
+        fam.setUseIndex(useIndex);
+        fam.openFamily();
+
+        return fam;
+    }
+
+
+    /** Reads the control block and geometry and finds the states. The index is turned off so nothing is reused or written */
+    @Benchmark
+    public Family openFamily() throws IOException {
+        return open(mRoot, false);
+    }
+
+
+    @Benchmark
+    public com.example.myfirstapp.State[] scanStates() {
+        return com.example.myfirstapp.State.scanStates(mFam, new boolean[1]);
+    }
+
+
+    @Benchmark
+    public float stateCoordsSequential() {
+
+        mNext = mNext % mFam.getNumOfStates() + 1;
+
+        FloatBuffer coords = mFam.getStateFromID(mNext).getStateCoords();
+
+        return coords.get(coords.limit() - 1);
+    }
+
+
+    @Benchmark
+    public float stateCoordsRandom() {
+
+        mNext = (mNext + 1) % NUM_RANDOM;
+
+        FloatBuffer coords = mFam.getStateFromID(mRandom[mNext]).getStateCoords();
+
+        return coords.get(coords.limit() - 1);
+    }
+
+
+    @Benchmark
+    public Part createPart() {
+        return new Part(mFam);
+    }
+
+
+    @Benchmark
+    public float[] modelBounds() {
+        return mFam.getModelBounds();
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.myfirstapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the native and Java vertex kernels, building the vertex positions
+ * and mesh boxes of every batch of a state as the renderer does - on one
+ * thread, and shared out between workers each with its own region.
+ *
+ * The native kernel needs the library built for the desktop first:
+ *
+ *     ./gradlew :benchmark:nativeLib :benchmark:jmh -Pjmh="VertexBenchmark"
+ *
+ * VertexBuilderTest checks the kernels give the same results bit for bit.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VertexBenchmark {
+
+    /** Number of parts in each model */
+    private final static int NUM_PARTS = 100;
+
+    @Param({"100000", "1000000"})
+    public int shells;
+
+    @Param({"JAVA", "NATIVE"})
+    public String kernel;
+
+    /** Batches of the meshes of every part */
+    private MeshBatch[] mBatches;
+
+    /** Coordinates of a state */
+    private FloatBuffer mCoords;
+
+    /** Vertex data and mesh boxes to fill */
+    private FloatBuffer mVertexData;
+    private FloatBuffer mBounds;
+
+    private VertexBuilder mBuilder = new VertexBuilder();
+
+    /** Parallel version - a region of the vertex data per batch, and a builder per worker */
+    private FloatBuffer[] mBatchData;
+    private int mNumThreads = Parallel.getNumThreads();
+    private ExecutorService mPool = Executors.newFixedThreadPool(mNumThreads);
+    private VertexBuilder[] mBuilders = new VertexBuilder[mNumThreads];
+
+
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+
+        File dir = new File(System.getProperty("bench.dir", "build/models"));
+
+        dir.mkdirs();
+
+        File root = new File(dir, "vertex_" + Integer.toString(shells) + ".ptf");
+
+        if(!root.exists()) {
+
+            D3plotGenerator gen = new D3plotGenerator();
+
+            gen.setShells(shells);
+            gen.setParts(NUM_PARTS);
+            gen.setStates(2);
+            gen.setShellResults(false);
+
+            gen.write(root);
+        }
+
+        Family fam = new Family(root.getPath());
+
+        fam.openFamily();
+
+        new Part(fam);
+
+        // Meshes and batches as the renderer makes them
+
+        ArrayList<PartMesh> meshes = new ArrayList<PartMesh>();
+
+        int[] local = new int[Node.getNum()];
+        Arrays.fill(local, -1);
+
+        for(int i=0; i<fam.getNumParts(); i++) {
+            meshes.addAll(PartMesh.createPartMeshes(i, Shell.getTop(), Part.getElsInPart(i), local));
+        }
+
+        mBatches = MeshBatch.createBatches(meshes.toArray(new PartMesh[meshes.size()]));
+
+        int maxVertices = 0;
+
+        for(int i=0; i<mBatches.length; i++) maxVertices = Math.max(maxVertices, mBatches[i].mNumVertices);
+
+        mCoords     = fam.getStateFromID(fam.getNumOfStates()).getStateCoords();
+        mVertexData = ByteBuffer.allocateDirect(maxVertices * 3 * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        mBounds     = ByteBuffer.allocateDirect(meshes.size() * Frustum.L_BOUNDS * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+
+        if(kernel.equals("NATIVE") && !VertexBuilder.haveNative()) {
+            throw new IllegalStateException("Native library not found - run :benchmark:nativeLib first");
+        }
+
+        mBuilder.setKernel(kernel.equals("NATIVE") ? VertexBuilder.NATIVE : VertexBuilder.JAVA);
+
+        // Regions for the parallel version
+
+        int numVertices = 0;
+
+        for(int i=0; i<mBatches.length; i++) numVertices += mBatches[i].mNumVertices;
+
+        FloatBuffer data = ByteBuffer.allocateDirect(numVertices * 3 * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+
+        mBatchData = new FloatBuffer[mBatches.length];
+
+        for(int i=0, base=0; i<mBatches.length; base+=mBatches[i].mNumVertices, i++) {
+
+            data.position(3 * base);
+            mBatchData[i] = data.slice();
+        }
+
+        for(int i=0; i<mNumThreads; i++) {
+            mBuilders[i] = new VertexBuilder();
+            mBuilders[i].setKernel(mBuilder.getKernel());
+        }
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mPool.shutdown();
+    }
+
+
+    @Benchmark
+    public FloatBuffer buildState() {
+
+        for(int i=0; i<mBatches.length; i++) {
+
+            MeshBatch batch = mBatches[i];
+
+            mBuilder.populate(batch.mNumVertices, mCoords, batch.mNodes, mVertexData);
+
+            for(int j=0; j<batch.mMeshes.length; j++) {
+
+                PartMesh mesh = batch.mMeshes[j];
+
+                mBuilder.getBounds(mesh.mFirstVertex, mesh.mNumVertices, mVertexData, mBounds, (batch.mFirstMesh + j) * Frustum.L_BOUNDS);
+            }
+        }
+
+        return mBounds;
+    }
+
+
+    @Benchmark
+    public FloatBuffer buildStateParallel() {
+
+        final int nbatches = mBatches.length;
+
+        Parallel.run(mPool, mNumThreads, mNumThreads, new Parallel.RangeTask() {
+            public void run(int first, int last) {
+
+                for(int c=first; c<last; c++) {
+
+                    VertexBuilder builder = mBuilders[c];
+
+                    int i1 = (int)((long)nbatches * (c + 1) / mNumThreads);
+
+                    for(int i=(int)((long)nbatches * c / mNumThreads); i<i1; i++) {
+
+                        MeshBatch batch = mBatches[i];
+
+                        builder.populate(batch.mNumVertices, mCoords, batch.mNodes, mBatchData[i]);
+
+                        for(int j=0; j<batch.mMeshes.length; j++) {
+
+                            PartMesh mesh = batch.mMeshes[j];
+
+                            builder.getBounds(mesh.mFirstVertex, mesh.mNumVertices, mBatchData[i], mBounds, (batch.mFirstMesh + j) * Frustum.L_BOUNDS);
+                        }
+                    }
+                }
+            }
+        });
+
+        return mBounds;
+    }
+}
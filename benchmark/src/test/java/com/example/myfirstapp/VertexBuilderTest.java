@@ -0,0 +1,203 @@
+package com.example.myfirstapp;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the native and Java vertex kernels give the same vertex data and
+ * mesh boxes, bit for bit, for every batch of a state as the renderer makes
+ * them.
+ *
+ * The test task builds the native library first (:benchmark:nativeLib). If
+ * it still can't be loaded the test fails rather than being skipped.
+ */
+public class VertexBuilderTest {
+
+    /** Size of the model */
+    private final static int NUM_SHELLS = 20000;
+    private final static int NUM_PARTS  = 20;
+
+    /** Batches of the meshes of every part */
+    private static MeshBatch[] sBatches;
+
+    /** Number of meshes */
+    private static int sNumMeshes;
+
+    /** Coordinates of a state */
+    private static FloatBuffer sCoords;
+
+    /** Most vertices in a batch */
+    private static int sMaxVertices;
+
+
+
+    @BeforeClass
+    public static void setup() throws IOException {
+
+        assertTrue("Native library not found - run :benchmark:nativeLib first", VertexBuilder.haveNative());
+
+        File dir = new File(System.getProperty("bench.dir", "build/models"));
+
+        dir.mkdirs();
+
+        File root = new File(dir, "vertex_test_" + Integer.toString(NUM_SHELLS) + ".ptf");
+
+        if(!root.exists()) {
+
+            D3plotGenerator gen = new D3plotGenerator();
+
+            gen.setShells(NUM_SHELLS);
+            gen.setParts(NUM_PARTS);
+            gen.setStates(2);
+            gen.setShellResults(false);
+
+            gen.write(root);
+        }
+
+        Family fam = new Family(root.getPath());
+
+        fam.openFamily();
+
+        new Part(fam);
+
+        // Meshes and batches as the renderer makes them
+
+        ArrayList<PartMesh> meshes = new ArrayList<PartMesh>();
+
+        int[] local = new int[Node.getNum()];
+        Arrays.fill(local, -1);
+
+        for(int i=0; i<fam.getNumParts(); i++) {
+            meshes.addAll(PartMesh.createPartMeshes(i, Shell.getTop(), Part.getElsInPart(i), local));
+        }
+
+        sNumMeshes = meshes.size();
+        sBatches   = MeshBatch.createBatches(meshes.toArray(new PartMesh[sNumMeshes]));
+
+        for(int i=0; i<sBatches.length; i++) sMaxVertices = Math.max(sMaxVertices, sBatches[i].mNumVertices);
+
+        sCoords = fam.getStateFromID(fam.getNumOfStates()).getStateCoords();
+    }
+
+
+    @Test
+    public void kernelsMatch() {
+
+        float[] nativeData = build(VertexBuilder.NATIVE);
+        float[] javaData   = build(VertexBuilder.JAVA);
+
+        assertEquals(nativeData.length, javaData.length);
+
+        for(int j=0; j<nativeData.length; j++) {
+            assertEquals("Vertex data differs at " + Integer.toString(j),
+                         Float.floatToRawIntBits(nativeData[j]), Float.floatToRawIntBits(javaData[j]));
+        }
+    }
+
+
+    @Test
+    public void boundsMatch() {
+
+        float[] nativeBounds = bounds(VertexBuilder.NATIVE);
+        float[] javaBounds   = bounds(VertexBuilder.JAVA);
+
+        for(int j=0; j<nativeBounds.length; j++) {
+            assertEquals("Mesh boxes differ at " + Integer.toString(j),
+                         Float.floatToRawIntBits(nativeBounds[j]), Float.floatToRawIntBits(javaBounds[j]));
+        }
+    }
+
+
+    /**
+     * Builds the vertex data of every batch with one kernel
+     * @param kernel NATIVE or JAVA
+     * @return the vertex data of all the batches, one after another
+     */
+    private static float[] build(int kernel) {
+
+        VertexBuilder builder = new VertexBuilder();
+
+        builder.setKernel(kernel);
+
+        assertEquals(kernel, builder.getKernel());
+
+        FloatBuffer vertexData = newBuffer(3 * sMaxVertices);
+
+        int total = 0;
+
+        for(int i=0; i<sBatches.length; i++) total += 3 * sBatches[i].mNumVertices;
+
+        float[] out = new float[total];
+
+        for(int i=0, base=0; i<sBatches.length; base+=3*sBatches[i].mNumVertices, i++) {
+
+            MeshBatch batch = sBatches[i];
+
+            builder.populate(batch.mNumVertices, sCoords, batch.mNodes, vertexData);
+
+            vertexData.position(0);
+            vertexData.get(out, base, 3 * batch.mNumVertices);
+            vertexData.position(0);
+        }
+
+        return out;
+    }
+
+
+    /**
+     * Gets the box around every mesh with one kernel, as the renderer does -
+     * building each batch's vertex data, then the boxes of its meshes
+     * @param kernel NATIVE or JAVA
+     * @return the boxes, Frustum.L_BOUNDS per mesh
+     */
+    private static float[] bounds(int kernel) {
+
+        VertexBuilder builder = new VertexBuilder();
+
+        builder.setKernel(kernel);
+
+        FloatBuffer vertexData = newBuffer(3 * sMaxVertices);
+        FloatBuffer bounds     = newBuffer(sNumMeshes * Frustum.L_BOUNDS);
+
+        for(int i=0; i<sBatches.length; i++) {
+
+            MeshBatch batch = sBatches[i];
+
+            builder.populate(batch.mNumVertices, sCoords, batch.mNodes, vertexData);
+
+            for(int j=0; j<batch.mMeshes.length; j++) {
+
+                PartMesh mesh = batch.mMeshes[j];
+
+                builder.getBounds(mesh.mFirstVertex, mesh.mNumVertices, vertexData, bounds, (batch.mFirstMesh + j) * Frustum.L_BOUNDS);
+            }
+        }
+
+        float[] out = new float[bounds.capacity()];
+
+        bounds.position(0);
+        bounds.get(out);
+
+        return out;
+    }
+
+
+    /**
+     * @param n Number of floats
+     * @return a direct buffer in native byte order, as the renderer uses
+     */
+    private static FloatBuffer newBuffer(int n) {
+        return ByteBuffer.allocateDirect(Math.max(1, n) * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+}